@@ -0,0 +1,115 @@
+package com.lwjlol.liveeventbus
+
+import android.os.Parcel
+import android.os.Parcelable
+import android.util.Log
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.platform.app.InstrumentationRegistry
+import org.junit.Assert.assertEquals
+import org.junit.Assume
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import java.nio.ByteBuffer
+
+/**
+ * [EventCodecs] 和 Parcelable 的对比，默认跳过，运行：
+ * `./gradlew :liveeventbus:connectedDebugAndroidTest -Pandroid.testInstrumentationRunnerArguments.benchmark=true`
+ */
+@RunWith(AndroidJUnit4::class)
+class EventCodecParcelBenchmark {
+    data class PlayerEvent(
+        val trackId: Long,
+        val position: Long,
+        val title: String,
+        val playing: Boolean
+    ) : Parcelable {
+        override fun writeToParcel(dest: Parcel, flags: Int) {
+            dest.writeLong(trackId)
+            dest.writeLong(position)
+            dest.writeString(title)
+            dest.writeInt(if (playing) 1 else 0)
+        }
+
+        override fun describeContents() = 0
+
+        companion object CREATOR : Parcelable.Creator<PlayerEvent> {
+            override fun createFromParcel(source: Parcel) =
+                PlayerEvent(source.readLong(), source.readLong(), source.readString()!!, source.readInt() != 0)
+
+            override fun newArray(size: Int) = arrayOfNulls<PlayerEvent>(size)
+        }
+    }
+
+    private val event = PlayerEvent(42, 123_456, "Track title", true)
+
+    @Before
+    fun setUp() {
+        Assume.assumeTrue(InstrumentationRegistry.getArguments().getString("benchmark") == "true")
+    }
+
+    @Test
+    fun encodeDecode_vsParcelable() {
+        val buffer = ByteBuffer.allocate(1024)
+        val codec = EventCodecs.get(PlayerEvent::class.java)
+        var decoded: PlayerEvent? = null
+        val codecNanos = measure {
+            buffer.clear()
+            codec.encode(event, buffer)
+            buffer.flip()
+            decoded = codec.decode(buffer)
+        }
+        assertEquals(event, decoded)
+
+        // 跨进程时 Parcel 需要 marshall 成字节，和写入 ByteBuffer 对应
+        var parcelBytes = 0
+        val parcelNanos = measure {
+            val out = Parcel.obtain()
+            event.writeToParcel(out, 0)
+            val bytes = out.marshall()
+            out.recycle()
+            parcelBytes = bytes.size
+            val parcel = Parcel.obtain()
+            parcel.unmarshall(bytes, 0, bytes.size)
+            parcel.setDataPosition(0)
+            decoded = PlayerEvent.createFromParcel(parcel)
+            parcel.recycle()
+        }
+        assertEquals(event, decoded)
+
+        buffer.clear()
+        codec.encode(event, buffer)
+        Log.i(
+            TAG,
+            "codecNs=%.0f codecBytes=%d parcelNs=%.0f parcelBytes=%d".format(
+                codecNanos, buffer.position(), parcelNanos, parcelBytes
+            )
+        )
+    }
+
+    /**
+     * 预热之后取最快的一轮
+     * @return 每次操作的纳秒数
+     */
+    private inline fun measure(operation: () -> Unit): Double {
+        var best = Long.MAX_VALUE
+        repeat(WARMUP + ROUNDS) { round ->
+            val start = System.nanoTime()
+            repeat(ITERATIONS) {
+                operation()
+            }
+            val elapsed = System.nanoTime() - start
+            if (round >= WARMUP && elapsed < best) {
+                best = elapsed
+            }
+        }
+        return best.toDouble() / ITERATIONS
+    }
+
+    private companion object {
+        const val TAG = "EventCodecBenchmark"
+        const val ITERATIONS = 10_000
+        const val WARMUP = 3
+        const val ROUNDS = 5
+    }
+}
@@ -0,0 +1,113 @@
+package com.lwjlol.liveeventbus
+
+import androidx.annotation.AnyThread
+import androidx.annotation.MainThread
+import androidx.lifecycle.Lifecycle
+import androidx.lifecycle.LifecycleOwner
+import androidx.lifecycle.Observer
+
+/**
+ * 把逐个收到的事件攒成一批回调给 [observer]：攒够 [maxBatchSize] 个立即回调，
+ * 否则在第一个事件之后 [maxLatencyMillis] 回调。回调的 List 每次复用，只在回调期间有效。只在主线程访问。
+ *
+ * 两个 List 交替使用：回调前交换，回调中收到的事件进入另一个 List，在这一批之后回调，
+ * 这种情况下下一批可能超过 [maxBatchSize]。
+ */
+internal class BatchingObserver<T>(
+    private val owner: LifecycleOwner,
+    private val maxBatchSize: Int,
+    private val maxLatencyMillis: Long,
+    private val observer: Observer<in List<T>>,
+    private val scheduler: MainScheduler = MainScheduler
+) : Observer<T>, Runnable, Subscription {
+    private var batch = ArrayList<T>(maxBatchSize.coerceAtMost(INITIAL_CAPACITY))
+    private var spare = ArrayList<T>(maxBatchSize.coerceAtMost(INITIAL_CAPACITY))
+    private var scheduled = false
+    private var cancelled = false
+    private var flushing = false
+    internal var inner: Subscription? = null
+
+    init {
+        require(maxBatchSize > 0) {
+            "maxBatchSize must be positive: $maxBatchSize"
+        }
+    }
+
+    override fun onChanged(t: T?) {
+        if (t == null || cancelled) return
+        batch.add(t)
+        if (batch.size >= maxBatchSize) {
+            flush()
+        } else {
+            schedule()
+        }
+    }
+
+    override fun run() {
+        scheduled = false
+        flush()
+    }
+
+    private fun schedule() {
+        if (scheduled) return
+        scheduled = true
+        scheduler.postDelayed(this, maxLatencyMillis)
+    }
+
+    @MainThread
+    private fun flush() {
+        if (scheduled) {
+            scheduled = false
+            scheduler.remove(this)
+        }
+        // 回调中发出的事件由外层继续攒批
+        if (flushing || batch.isEmpty()) return
+        if (owner.lifecycle.currentState == Lifecycle.State.DESTROYED) {
+            batch.clear()
+            return
+        }
+        flushing = true
+        try {
+            do {
+                val current = batch
+                batch = spare
+                spare = current
+                try {
+                    observer.onChanged(current)
+                } finally {
+                    current.clear()
+                }
+            } while (batch.size >= maxBatchSize && !cancelled)
+        } finally {
+            flushing = false
+        }
+        // 回调中攒了不满一批的事件
+        if (batch.isNotEmpty() && !cancelled) {
+            schedule()
+        }
+    }
+
+    /**
+     * 取消订阅，还没回调的事件被丢弃
+     */
+    @AnyThread
+    override fun unsubscribe() {
+        if (!scheduler.isMainThread()) {
+            scheduler.post(Runnable {
+                unsubscribe()
+            })
+            return
+        }
+        cancelled = true
+        inner?.unsubscribe()
+        if (scheduled) {
+            scheduled = false
+            scheduler.remove(this)
+        }
+        batch.clear()
+    }
+
+    private companion object {
+        const val INITIAL_CAPACITY = 16
+    }
+}
@@ -0,0 +1,81 @@
+package com.lwjlol.liveeventbus
+
+/**
+ * 非活跃期间积压事件的策略：owner 低于 STARTED 时收到的事件按顺序放入该订阅自己的队列，
+ * 回到 STARTED 时按顺序补发，而不是只补发最后一个。
+ *
+ * @param capacity 队列最多保存的事件数量
+ * @param overflow 队列满了之后的处理方式
+ */
+class BacklogPolicy(
+    val capacity: Int,
+    val overflow: Overflow = Overflow.DROP_OLDEST
+) {
+    init {
+        require(capacity > 0) {
+            "capacity must be positive: $capacity"
+        }
+    }
+
+    enum class Overflow {
+        /**
+         * 丢弃最早的事件
+         */
+        DROP_OLDEST,
+
+        /**
+         * 丢弃新的事件
+         */
+        DROP_LATEST
+    }
+}
+
+/**
+ * 一个订阅积压的事件，环形数组按需扩容到 [BacklogPolicy.capacity]。只在主线程访问
+ */
+internal class EventBacklog(private val policy: BacklogPolicy) {
+    private var items = arrayOfNulls<Any>(policy.capacity.coerceAtMost(INITIAL_CAPACITY))
+    private var head = 0
+    var size = 0
+        private set
+
+    fun offer(value: Any?) {
+        if (size == items.size) {
+            if (size < policy.capacity) {
+                grow()
+            } else if (policy.overflow == BacklogPolicy.Overflow.DROP_LATEST) {
+                return
+            } else {
+                items[head] = value
+                head = (head + 1) % items.size
+                return
+            }
+        }
+        items[(head + size) % items.size] = value
+        size++
+    }
+
+    /**
+     * 调用前先判断 [size]
+     */
+    fun poll(): Any? {
+        val value = items[head]
+        items[head] = null
+        head = (head + 1) % items.size
+        size--
+        return value
+    }
+
+    private fun grow() {
+        val grown = arrayOfNulls<Any>((items.size * 2).coerceAtMost(policy.capacity))
+        for (i in 0 until size) {
+            grown[i] = items[(head + i) % items.size]
+        }
+        items = grown
+        head = 0
+    }
+
+    private companion object {
+        const val INITIAL_CAPACITY = 4
+    }
+}
@@ -0,0 +1,353 @@
+package com.lwjlol.liveeventbus
+
+import com.lwjlol.liveeventbus.LiveEventBus.PrimitiveBooleanEvent
+import com.lwjlol.liveeventbus.LiveEventBus.PrimitiveCharEvent
+import com.lwjlol.liveeventbus.LiveEventBus.PrimitiveDoubleEvent
+import com.lwjlol.liveeventbus.LiveEventBus.PrimitiveFloatEvent
+import com.lwjlol.liveeventbus.LiveEventBus.PrimitiveIntEvent
+import com.lwjlol.liveeventbus.LiveEventBus.PrimitiveLongEvent
+import com.lwjlol.liveeventbus.LiveEventBus.PrimitiveStringEvent
+import java.lang.reflect.Constructor
+import java.lang.reflect.Field
+import java.lang.reflect.Modifier
+import java.nio.ByteBuffer
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * 事件和二进制之间的转换，写入/读取调用方提供的 [ByteBuffer]，从 position 开始，结束后 position 在末尾。
+ * 空间不够时抛出 [java.nio.BufferOverflowException]。
+ */
+interface EventCodec<T> {
+    fun encode(event: T, buffer: ByteBuffer)
+
+    fun decode(buffer: ByteBuffer): T
+}
+
+/**
+ * [EventCodec] 注册表，查找顺序：[register] 注册的 > 内置的基本数据类型事件 > 反射实现。
+ *
+ * 反射实现的字段按名字排序编码，不依赖 `getDeclaredFields` 的顺序（ART 和 JVM 不同）。
+ * 字段类型各不相同并且有参数类型一一对应的构造函数时通过构造函数创建；否则不调用构造函数创建对象再设置字段。
+ * 字段支持基本类型及其包装类型、String、枚举、注册了 [EventCodec] 的类型以及字段同样满足这些条件的具体类，
+ * 其他类型（List、Map、接口、抽象类、数组）在第一次使用时抛出 [IllegalArgumentException]。反射信息在第一次使用时解析并缓存。
+ * 混淆时需要保留事件类的字段，两端的字段名必须一致。
+ */
+object EventCodecs {
+    private val codecs = ConcurrentHashMap<Class<*>, EventCodec<*>>()
+
+    init {
+        codecs[PrimitiveStringEvent::class.java] = PrimitiveStringEventCodec
+        codecs[PrimitiveIntEvent::class.java] = PrimitiveIntEventCodec
+        codecs[PrimitiveLongEvent::class.java] = PrimitiveLongEventCodec
+        codecs[PrimitiveFloatEvent::class.java] = PrimitiveFloatEventCodec
+        codecs[PrimitiveDoubleEvent::class.java] = PrimitiveDoubleEventCodec
+        codecs[PrimitiveBooleanEvent::class.java] = PrimitiveBooleanEventCodec
+        codecs[PrimitiveCharEvent::class.java] = PrimitiveCharEventCodec
+    }
+
+    fun <T> register(clazz: Class<T>, codec: EventCodec<T>) {
+        codecs[clazz] = codec
+    }
+
+    @Suppress("UNCHECKED_CAST")
+    fun <T> get(clazz: Class<T>): EventCodec<T> {
+        codecs[clazz]?.let {
+            return it as EventCodec<T>
+        }
+        val codec = ReflectiveEventCodec(clazz)
+        return (codecs.putIfAbsent(clazz, codec) ?: codec) as EventCodec<T>
+    }
+
+    fun encode(event: Any, buffer: ByteBuffer) {
+        get(event.javaClass).encode(event, buffer)
+    }
+
+    /**
+     * 是否已经注册或者创建过 [clazz] 的实现
+     */
+    internal fun has(clazz: Class<*>) = codecs.containsKey(clazz)
+}
+
+/**
+ * 字符串写成 `[length][UTF-16]`，编码时不分配内存
+ */
+internal fun ByteBuffer.putEventString(value: String) {
+    putInt(value.length)
+    for (i in value.indices) {
+        putChar(value[i])
+    }
+}
+
+internal fun ByteBuffer.getEventString(): String {
+    val length = int
+    val chars = CharArray(length)
+    for (i in 0 until length) {
+        chars[i] = char
+    }
+    return String(chars)
+}
+
+internal object PrimitiveStringEventCodec : EventCodec<PrimitiveStringEvent> {
+    override fun encode(event: PrimitiveStringEvent, buffer: ByteBuffer) {
+        buffer.putEventString(event.eventKey)
+        buffer.put(if (event.sticky) 1 else 0)
+        buffer.putEventString(event.stringValue)
+    }
+
+    override fun decode(buffer: ByteBuffer) =
+        PrimitiveStringEvent(buffer.getEventString(), buffer.get() != 0.toByte(), buffer.getEventString())
+}
+
+internal object PrimitiveIntEventCodec : EventCodec<PrimitiveIntEvent> {
+    override fun encode(event: PrimitiveIntEvent, buffer: ByteBuffer) {
+        buffer.putEventString(event.eventKey)
+        buffer.put(if (event.sticky) 1 else 0)
+        buffer.putInt(event.intValue)
+    }
+
+    override fun decode(buffer: ByteBuffer) =
+        PrimitiveIntEvent(buffer.getEventString(), buffer.get() != 0.toByte(), buffer.int)
+}
+
+internal object PrimitiveLongEventCodec : EventCodec<PrimitiveLongEvent> {
+    override fun encode(event: PrimitiveLongEvent, buffer: ByteBuffer) {
+        buffer.putEventString(event.eventKey)
+        buffer.put(if (event.sticky) 1 else 0)
+        buffer.putLong(event.longValue)
+    }
+
+    override fun decode(buffer: ByteBuffer) =
+        PrimitiveLongEvent(buffer.getEventString(), buffer.get() != 0.toByte(), buffer.long)
+}
+
+internal object PrimitiveFloatEventCodec : EventCodec<PrimitiveFloatEvent> {
+    override fun encode(event: PrimitiveFloatEvent, buffer: ByteBuffer) {
+        buffer.putEventString(event.eventKey)
+        buffer.put(if (event.sticky) 1 else 0)
+        buffer.putFloat(event.floatValue)
+    }
+
+    override fun decode(buffer: ByteBuffer) =
+        PrimitiveFloatEvent(buffer.getEventString(), buffer.get() != 0.toByte(), buffer.float)
+}
+
+internal object PrimitiveDoubleEventCodec : EventCodec<PrimitiveDoubleEvent> {
+    override fun encode(event: PrimitiveDoubleEvent, buffer: ByteBuffer) {
+        buffer.putEventString(event.eventKey)
+        buffer.put(if (event.sticky) 1 else 0)
+        buffer.putDouble(event.doubleValue)
+    }
+
+    override fun decode(buffer: ByteBuffer) =
+        PrimitiveDoubleEvent(buffer.getEventString(), buffer.get() != 0.toByte(), buffer.double)
+}
+
+internal object PrimitiveBooleanEventCodec : EventCodec<PrimitiveBooleanEvent> {
+    override fun encode(event: PrimitiveBooleanEvent, buffer: ByteBuffer) {
+        buffer.putEventString(event.eventKey)
+        buffer.put(if (event.sticky) 1 else 0)
+        buffer.put(if (event.booleanValue) 1 else 0)
+    }
+
+    override fun decode(buffer: ByteBuffer) =
+        PrimitiveBooleanEvent(buffer.getEventString(), buffer.get() != 0.toByte(), buffer.get() != 0.toByte())
+}
+
+internal object PrimitiveCharEventCodec : EventCodec<PrimitiveCharEvent> {
+    override fun encode(event: PrimitiveCharEvent, buffer: ByteBuffer) {
+        buffer.putEventString(event.eventKey)
+        buffer.put(if (event.sticky) 1 else 0)
+        buffer.putChar(event.charValue)
+    }
+
+    override fun decode(buffer: ByteBuffer) =
+        PrimitiveCharEvent(buffer.getEventString(), buffer.get() != 0.toByte(), buffer.char)
+}
+
+/**
+ * 按字段名的顺序编解码，引用类型前面有一个字节表示是否为 null。
+ *
+ * 构造函数的参数只能按类型和字段对应，有多个字段类型相同时无法知道参数对应哪个字段，
+ * 这时和没有对应的构造函数一样，通过 [allocateInstance] 创建对象再设置所有字段。
+ */
+internal class ReflectiveEventCodec<T>(private val clazz: Class<T>) : EventCodec<T> {
+    private val fields: Array<Field> = encodedFields(clazz)
+        .sortedBy { it.name }
+        .onEach { it.isAccessible = true }
+        .toTypedArray()
+
+    private val constructor: Constructor<T>? = findConstructor()?.also {
+        it.isAccessible = true
+    }
+
+    /**
+     * 构造函数第 i 个参数对应的字段下标
+     */
+    private val parameterFields = IntArray(constructor?.parameterTypes?.size ?: 0)
+
+    init {
+        checkFieldTypes(clazz, clazz.name, HashSet())
+        val constructor = constructor
+        if (constructor == null) {
+            requireNotNull(allocateInstance) {
+                "${clazz.name} needs a constructor whose parameter types match its fields to be decoded, or register an EventCodec"
+            }
+        } else {
+            val parameterTypes = constructor.parameterTypes
+            for (i in parameterTypes.indices) {
+                parameterFields[i] = fields.indexOfFirst { it.type == parameterTypes[i] }
+            }
+        }
+    }
+
+    /**
+     * @return 字段类型有重复时返回 null
+     */
+    private fun findConstructor(): Constructor<T>? {
+        val types = fields.map { it.type }
+        if (types.toSet().size != types.size) return null
+        @Suppress("UNCHECKED_CAST")
+        return clazz.declaredConstructors.firstOrNull {
+            it.parameterTypes.size == types.size && it.parameterTypes.toSet() == types.toSet()
+        } as Constructor<T>?
+    }
+
+    override fun encode(event: T, buffer: ByteBuffer) {
+        for (field in fields) {
+            when (field.type) {
+                Int::class.javaPrimitiveType -> buffer.putInt(field.getInt(event))
+                Long::class.javaPrimitiveType -> buffer.putLong(field.getLong(event))
+                Float::class.javaPrimitiveType -> buffer.putFloat(field.getFloat(event))
+                Double::class.javaPrimitiveType -> buffer.putDouble(field.getDouble(event))
+                Boolean::class.javaPrimitiveType -> buffer.put(if (field.getBoolean(event)) 1 else 0)
+                Char::class.javaPrimitiveType -> buffer.putChar(field.getChar(event))
+                Short::class.javaPrimitiveType -> buffer.putShort(field.getShort(event))
+                Byte::class.javaPrimitiveType -> buffer.put(field.getByte(event))
+                else -> encodeObject(field.type, field.get(event), buffer)
+            }
+        }
+    }
+
+    private fun encodeObject(type: Class<*>, value: Any?, buffer: ByteBuffer) {
+        if (value == null) {
+            buffer.put(0)
+            return
+        }
+        buffer.put(1)
+        @Suppress("UNCHECKED_CAST")
+        when (value) {
+            is String -> buffer.putEventString(value)
+            is Int -> buffer.putInt(value)
+            is Long -> buffer.putLong(value)
+            is Float -> buffer.putFloat(value)
+            is Double -> buffer.putDouble(value)
+            is Boolean -> buffer.put(if (value) 1 else 0)
+            is Char -> buffer.putChar(value)
+            is Short -> buffer.putShort(value)
+            is Byte -> buffer.put(value)
+            is Enum<*> -> buffer.putInt(value.ordinal)
+            // 按声明的类型编码，和解码保持一致
+            else -> EventCodecs.get(type as Class<Any>).encode(value, buffer)
+        }
+    }
+
+    override fun decode(buffer: ByteBuffer): T {
+        val values = arrayOfNulls<Any>(fields.size)
+        for (i in fields.indices) {
+            val type = fields[i].type
+            values[i] = when (type) {
+                Int::class.javaPrimitiveType -> buffer.int
+                Long::class.javaPrimitiveType -> buffer.long
+                Float::class.javaPrimitiveType -> buffer.float
+                Double::class.javaPrimitiveType -> buffer.double
+                Boolean::class.javaPrimitiveType -> buffer.get() != 0.toByte()
+                Char::class.javaPrimitiveType -> buffer.char
+                Short::class.javaPrimitiveType -> buffer.short
+                Byte::class.javaPrimitiveType -> buffer.get()
+                else -> decodeObject(type, buffer)
+            }
+        }
+        val constructor = constructor
+        if (constructor != null) {
+            val args = arrayOfNulls<Any>(parameterFields.size)
+            for (i in args.indices) {
+                args[i] = values[parameterFields[i]]
+            }
+            return constructor.newInstance(*args)
+        }
+        @Suppress("UNCHECKED_CAST")
+        val event = allocateInstance!!(clazz) as T
+        for (i in fields.indices) {
+            fields[i].set(event, values[i])
+        }
+        return event
+    }
+
+    private fun decodeObject(type: Class<*>, buffer: ByteBuffer): Any? {
+        if (buffer.get() == 0.toByte()) return null
+        return when (type) {
+            String::class.java -> buffer.getEventString()
+            Int::class.javaObjectType -> buffer.int
+            Long::class.javaObjectType -> buffer.long
+            Float::class.javaObjectType -> buffer.float
+            Double::class.javaObjectType -> buffer.double
+            Boolean::class.javaObjectType -> buffer.get() != 0.toByte()
+            Char::class.javaObjectType -> buffer.char
+            Short::class.javaObjectType -> buffer.short
+            Byte::class.javaObjectType -> buffer.get()
+            else -> if (type.isEnum) type.enumConstants[buffer.int] else EventCodecs.get(type).decode(buffer)
+        }
+    }
+}
+
+private fun encodedFields(clazz: Class<*>): List<Field> = clazz.declaredFields
+    .filter { !Modifier.isStatic(it.modifiers) && !Modifier.isTransient(it.modifiers) && !it.isSynthetic }
+
+private val BOXED_TYPES: Set<Class<*>> = setOf(
+    Int::class.javaObjectType,
+    Long::class.javaObjectType,
+    Float::class.javaObjectType,
+    Double::class.javaObjectType,
+    Boolean::class.javaObjectType,
+    Char::class.javaObjectType,
+    Short::class.javaObjectType,
+    Byte::class.javaObjectType
+)
+
+/**
+ * 创建反射实现时检查字段类型，解码只能按声明的类型创建对象，所以接口、抽象类（List、Map 等）和数组都不支持。
+ * 其他类型需要注册了 [EventCodec] 或者本身的字段也满足这些条件
+ *
+ * @param path 报错时定位字段，例如 `Event.user.name`
+ * @param visiting 已经检查过的类型，字段引用自身或者循环引用时不重复检查
+ */
+private fun checkFieldTypes(clazz: Class<*>, path: String, visiting: MutableSet<Class<*>>) {
+    visiting.add(clazz)
+    for (field in encodedFields(clazz)) {
+        val type = field.type
+        if (type.isPrimitive || type == String::class.java || type in BOXED_TYPES || type.isEnum) continue
+        if (EventCodecs.has(type) || type in visiting) continue
+        require(
+            type != Any::class.java && !type.isInterface && !type.isArray && !Modifier.isAbstract(type.modifiers)
+        ) {
+            "unsupported field type ${type.name}: $path.${field.name}, register an EventCodec for ${type.name}"
+        }
+        checkFieldTypes(type, "$path.${field.name}", visiting)
+    }
+}
+
+/**
+ * 不调用构造函数创建对象，JVM 和 Android 上都可以通过 sun.misc.Unsafe 实现，不可用时为 null
+ */
+private val allocateInstance: ((Class<*>) -> Any)? by lazy {
+    try {
+        val unsafeClass = Class.forName("sun.misc.Unsafe")
+        val field = unsafeClass.getDeclaredField("theUnsafe")
+        field.isAccessible = true
+        val unsafe = field.get(null)
+        val allocate = unsafeClass.getMethod("allocateInstance", Class::class.java)
+        return@lazy { clazz: Class<*> -> allocate.invoke(unsafe, clazz) }
+    } catch (e: Exception) {
+        null
+    }
+}
@@ -0,0 +1,145 @@
+package com.lwjlol.liveeventbus
+
+import androidx.annotation.AnyThread
+import androidx.annotation.MainThread
+import androidx.collection.ArrayMap
+import androidx.lifecycle.Lifecycle
+import androidx.lifecycle.LifecycleEventObserver
+import androidx.lifecycle.LifecycleOwner
+import androidx.lifecycle.Observer
+
+/**
+ * 从事件中提取用于过滤的 key，例如 `KeySelector<UserEvent> { it.userId }`。
+ *
+ * 同一个 [KeySelector] 实例的所有订阅共用一份索引，每个事件只会被它提取一次，
+ * 所以请复用同一个实例（例如定义成常量），而不是在每次订阅时创建新的 lambda。
+ */
+fun interface KeySelector<in T> {
+    fun select(event: T): Any?
+}
+
+/**
+ * 按 [KeySelector] 提取的 key 索引的订阅，分发时只回调 key 相等的订阅，
+ * 耗时与 selector 的数量和匹配的订阅数量有关，与总的订阅数量无关。只在主线程访问。
+ *
+ * 同一个 key 的订阅按注册顺序保存在数组中，增删时整体替换，分发时遍历的数组不会被回调修改。
+ */
+internal class FilterIndex<T>(private val liveData: EventLiveData<T>) {
+    private val index = ArrayMap<KeySelector<T>, ArrayMap<Any?, Array<FilteredObserver<T>>>>(2)
+
+    fun isEmpty() = index.isEmpty
+
+    @MainThread
+    fun add(subscription: FilteredObserver<T>, current: T?) {
+        val byKey = index[subscription.selector] ?: ArrayMap<Any?, Array<FilteredObserver<T>>>(4).also {
+            index[subscription.selector] = it
+        }
+        val subscriptions = byKey[subscription.expected]
+        byKey[subscription.expected] = if (subscriptions == null) arrayOf(subscription) else subscriptions + subscription
+        subscription.owner?.lifecycle?.addObserver(subscription)
+        // 粘性事件补发最后一个匹配的值
+        if (current != null && liveData.sticky && subscription.selector.select(current) == subscription.expected) {
+            subscription.offer(current)
+        }
+    }
+
+    @MainThread
+    fun remove(subscription: FilteredObserver<T>) {
+        if (subscription.removed) return
+        subscription.removed = true
+        subscription.owner?.lifecycle?.removeObserver(subscription)
+        val byKey = index[subscription.selector] ?: return
+        val subscriptions = byKey[subscription.expected] ?: return
+        if (subscriptions.size > 1) {
+            byKey[subscription.expected] = subscriptions.filter { it !== subscription }.toTypedArray()
+            return
+        }
+        byKey.remove(subscription.expected)
+        if (byKey.isEmpty) {
+            index.remove(subscription.selector)
+        }
+    }
+
+    /**
+     * 按注册顺序回调匹配的订阅
+     *
+     * @return 事件是否被 [LiveEventBus.consume] 消费，消费后剩下的订阅不再收到
+     */
+    @MainThread
+    fun dispatch(value: T): Boolean {
+        // 回调中可能增删 selector
+        var i = 0
+        while (i < index.size) {
+            val subscriptions = index.valueAt(i)[index.keyAt(i).select(value)]
+            i++
+            if (subscriptions == null) continue
+            for (subscription in subscriptions) {
+                if (subscription.offer(value)) return true
+            }
+        }
+        return false
+    }
+}
+
+/**
+ * 带过滤条件的订阅，[owner] 销毁时自动取消
+ */
+class FilteredObserver<T> internal constructor(
+    private val liveData: EventLiveData<T>,
+    internal val selector: KeySelector<T>,
+    internal val expected: Any?,
+    private val ownerKey: String,
+    internal val owner: LifecycleOwner?,
+    private val forever: Boolean,
+    private val observer: Observer<in T>
+) : LifecycleEventObserver, Subscription {
+    internal var removed = false
+
+    /**
+     * 非活跃期间收到的最后一个事件，活跃时补发一次
+     */
+    private var pending: Any? = NONE
+
+    private val isActive: Boolean
+        get() = forever || owner == null || owner.lifecycle.currentState.isAtLeast(Lifecycle.State.STARTED)
+
+    /**
+     * @return 回调中是否调用了 [LiveEventBus.consume]
+     */
+    internal fun offer(value: T): Boolean {
+        if (removed) return false
+        if (isActive) {
+            return liveData.dispatch(ownerKey, observer, value)
+        }
+        pending = value
+        return false
+    }
+
+    @AnyThread
+    override fun unsubscribe() {
+        if (EventLiveData.isMainThread()) {
+            liveData.removeFilteredObserver(this)
+        } else {
+            EventLiveData.mainHandler.post {
+                liveData.removeFilteredObserver(this)
+            }
+        }
+    }
+
+    override fun onStateChanged(source: LifecycleOwner, event: Lifecycle.Event) {
+        if (event == Lifecycle.Event.ON_DESTROY) {
+            unsubscribe()
+            return
+        }
+        if (pending !== NONE && isActive) {
+            @Suppress("UNCHECKED_CAST")
+            val value = pending as T
+            pending = NONE
+            offer(value)
+        }
+    }
+
+    private companion object {
+        val NONE = Any()
+    }
+}
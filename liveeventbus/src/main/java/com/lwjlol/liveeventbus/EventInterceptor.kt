@@ -0,0 +1,16 @@
+package com.lwjlol.liveeventbus
+
+/**
+ * 全局的事件拦截器，在 [LiveEventBus.send] 把事件交给 [EventLiveData] 之前按注册顺序调用，
+ * 可以用来打日志、去重、采样或者过滤。
+ *
+ * 拦截器在调用 send 的线程执行，需要自己保证线程安全。
+ */
+fun interface EventInterceptor {
+    /**
+     * @param event 上一个拦截器返回的事件
+     * @param sticky 是否是粘性事件
+     * @return 继续发送的事件，可以返回新的事件对象；返回 null 丢弃该事件，后面的拦截器不会再被调用
+     */
+    fun intercept(event: Any, sticky: Boolean): Any?
+}
@@ -1,24 +1,56 @@
 package com.lwjlol.liveeventbus
 
+import android.os.Handler
 import android.os.Looper
 import android.os.SystemClock
+import android.util.Log
+import androidx.annotation.AnyThread
 import androidx.annotation.MainThread
-import androidx.collection.ArrayMap
+import androidx.annotation.VisibleForTesting
 import androidx.fragment.app.Fragment
 import androidx.lifecycle.*
+import com.lwjlol.liveeventbus.SubscriptionTable.Companion.FLAG_ACTIVE
+import com.lwjlol.liveeventbus.SubscriptionTable.Companion.FLAG_FOREVER
+import java.util.ArrayDeque
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.atomic.AtomicBoolean
 import java.util.concurrent.atomic.AtomicInteger
 
 /**
+ * 订阅保存在 [SubscriptionTable] 中，由 [EventLiveData] 自己分发，
+ * [LiveData] 只负责保存值和 [postValue]。
+ *
+ * 订阅和取消订阅可以在任意线程调用：子线程的操作先放入并发队列，在主线程下一次分发之前（或者 post 到主线程后）
+ * 统一应用到订阅表，订阅表本身只在主线程访问。
+ *
  * @param sticky indicate that event is a sticky event
+ * @param eventType 事件类型，仅用于 [ObserverWatchdog] 等诊断信息
  *
  */
-class EventLiveData<T>(val sticky: Boolean = true) : MutableLiveData<T>() {
-    private val tempValueMap = ArrayMap<String, Any?>(2)
-    private val foreverObserverMap = ArrayMap<KeyWrapper, Observer<T>>(2)
-    private val callMap = ArrayMap<String, Int>(2)
-    private var isObservedMap = ArrayMap<String, Boolean>(2)
+class EventLiveData<T>(
+    val sticky: Boolean = true,
+    val eventType: Class<*>? = null
+) : MutableLiveData<T>() {
+    private val table = SubscriptionTable<T>()
+
+    /**
+     * 每个 [LifecycleOwner] 只注册一个生命周期回调，由它更新该 owner 下所有订阅的状态
+     */
+    private val ownerHooks = HashMap<LifecycleOwner, OwnerHook>(4)
     private val callCount = AtomicInteger(0)
-    private val keyMap = ArrayMap<String, ArrayList<KeyWrapper>>(2)
+    private var dispatching = false
+    private var dispatchInvalidated = false
+
+    /**
+     * 子线程发起的订阅/取消订阅，在主线程应用
+     */
+    private val pendingOps = ConcurrentLinkedQueue<Any>()
+    private val drainScheduled = AtomicBoolean(false)
+    private val drainRunnable = Runnable {
+        drainScheduled.set(false)
+        drainPendingOps()
+    }
 
     /**
      * 最后一个事件是否是 [call] 发出的
@@ -29,68 +61,279 @@ class EventLiveData<T>(val sticky: Boolean = true) : MutableLiveData<T>() {
     @Volatile
     private var invokePostValueFromCall = false
 
+    /**
+     * [observeFiltered] 注册的订阅，没有时为 null
+     */
+    private var filterIndex: FilterIndex<T>? = null
+
+    /**
+     * 最后一次通知 [observedListener] 时是否有订阅
+     */
+    private var observed = false
+
+    /**
+     * 进行中的 post async trace section，0 表示没有
+     */
+    private val postTraceCookie = AtomicInteger(0)
+
     /**
      * 直接发送一个 null 值来通知 [Observer] 回调，必须通过 [observe]/[observeForever] 注册才能收到结果，如果通过 [observeNonNull]/[observeForeverNonNull]
      * 注册会抛出错误。
      */
     fun call() {
-        callCount.incrementAndGet()
-        setCallForAll()
-        lastIsCall = true
-        if (Looper.myLooper() == Looper.getMainLooper()) {
-            super.setValue(null)
+        if (isMainThread()) {
+            drainPendingOps()
+            trampoline(null, true)
         } else {
             invokePostValueFromCall = true
-            super.postValue(null)
+            super.postValue(tracePost(null))
         }
     }
 
     override fun postValue(value: T?) {
         invokePostValueFromCall = false
-        super.postValue(value)
+        super.postValue(tracePost(value))
     }
 
+    /**
+     * 在 Observer 回调中调用时（包括其他 [EventLiveData] 的回调），事件排到当前这一轮分发结束之后再分发，
+     * 在此之前 [getValue] 仍然是旧的值
+     */
     override fun setValue(value: T?) {
-        lastIsCall = invokePostValueFromCall
+        val posted = value as? TracedPost
+        if (posted != null) {
+            endPostTrace(posted.cookie)
+        }
+        drainPendingOps()
+        val isCall = invokePostValueFromCall
         invokePostValueFromCall = false
-        setValueForAll(value)
+        @Suppress("UNCHECKED_CAST")
+        trampoline(if (posted != null) posted.value as T? else value, isCall)
+    }
+
+    /**
+     * 不在分发中时直接分发，然后依次分发回调中发出的事件；否则排队，调用栈的深度不会随级联的层数增加
+     */
+    @MainThread
+    private fun trampoline(value: T?, isCall: Boolean) {
+        if (cascadeDepth > 0) {
+            val depth = cascadeDepth + 1
+            if (depth > maxCascadeDepth) {
+                Log.w(TAG, "drop ${eventType?.name ?: "event"}: cascade depth exceeds $maxCascadeDepth")
+                return
+            }
+            deferred.addLast(DeferredEvent(this, value, isCall, depth))
+            return
+        }
+        cascadeDepth = 1
+        try {
+            fanOut(value, isCall)
+            while (true) {
+                val next = deferred.pollFirst() ?: break
+                cascadeDepth = next.depth
+                next.run()
+            }
+        } finally {
+            cascadeDepth = 0
+            deferred.clear()
+        }
+    }
+
+    /**
+     * 分发一个事件给所有订阅
+     */
+    private fun fanOut(value: T?, isCall: Boolean) {
+        lastIsCall = isCall
+        if (isCall) {
+            callCount.incrementAndGet()
+            setCallForAll()
+        } else {
+            setValueForAll(value)
+        }
+        appendBacklogs(value)
         super.setValue(value)
+        val consumed = dispatchAll()
+        val filterIndex = filterIndex
+        if (!consumed && value != null && filterIndex != null) {
+            filterIndex.dispatch(value)
+        }
+    }
+
+    /**
+     * 开启 trace 时把 post 的值和 cookie 包在一起，只有 post 的 Runnable 分发这个值时才结束 async section，
+     * 主线程直接调用的 [setValue] 不会结束别人的 section
+     */
+    private fun tracePost(value: T?): T? {
+        val tracer = BusTrace.tracer ?: return value
+        val cookie = BusTrace.nextCookie()
+        val label = BusTrace.label("post", eventType)
+        tracer.beginAsyncSection(label, cookie)
+        // 之前的 post 还没分发就被合并了
+        val previous = postTraceCookie.getAndSet(cookie)
+        if (previous != 0) {
+            tracer.endAsyncSection(label, previous)
+        }
+        @Suppress("UNCHECKED_CAST")
+        return TracedPost(value, cookie) as T
+    }
+
+    private fun endPostTrace(cookie: Int) {
+        // 被合并的 post 已经在合并时结束了
+        if (postTraceCookie.compareAndSet(cookie, 0)) {
+            BusTrace.tracer?.endAsyncSection(BusTrace.label("post", eventType), cookie)
+        }
     }
 
     private fun setCallForAll() {
-        for (item in tempValueMap) {
-            // 跳过非粘性还没注册的组件
-            if (isObservedMap.getOrDefault(item.key, false) != true && !sticky) {
-                continue
-            }
-            item.setValue(CALL)
+        val names = table.keyNames
+        val pending = table.keyPending
+        for (slot in 0 until table.keySize) {
+            // 空槽位
+            if (names[slot] == null) continue
+            pending[slot] = CALL
         }
     }
 
     private fun setValueForAll(value: T?) {
-        for (item in tempValueMap) {
-            // 跳过非粘性还没注册的组件
-            if (isObservedMap.getOrDefault(item.key, false) != true && !sticky) {
-                continue
+        val names = table.keyNames
+        val pending = table.keyPending
+        for (slot in 0 until table.keySize) {
+            // 空槽位
+            if (names[slot] == null) continue
+            pending[slot] = value ?: NULL
+        }
+    }
+
+    /**
+     * 非活跃并且设置了 [BacklogPolicy] 的订阅积压事件，[call] 积压为 null
+     */
+    private fun appendBacklogs(value: T?) {
+        if (table.backlogCount == 0) return
+        val backlogs = table.subBacklogs
+        for (slot in 0 until table.size) {
+            val backlog = backlogs[slot] ?: continue
+            if (!table.isActive(slot)) {
+                backlog.offer(value)
+            }
+        }
+    }
+
+    /**
+     * 按优先级从高到低分发给所有活跃的订阅，同优先级按注册顺序；回调中新增的订阅会触发重新遍历，
+     * 已经收到事件的 ownerKey 不会再收到
+     *
+     * @return 事件是否被 [LiveEventBus.consume] 消费
+     */
+    private fun dispatchAll(): Boolean {
+        if (dispatching) {
+            dispatchInvalidated = true
+            return false
+        }
+        dispatching = true
+        var consumed = false
+        try {
+            do {
+                dispatchInvalidated = false
+                // 回调中增删订阅不会修改这份快照，新增订阅会触发重新遍历
+                val slots = table.activeSlots()
+                val count = table.activeSlotCount
+                for (i in 0 until count) {
+                    val slot = slots[i]
+                    // 遍历期间被删除或者变为非活跃
+                    if (!table.isActive(slot)) continue
+                    consumed = considerNotify(slot)
+                    // 先检查 consume，回调中同时新增订阅时也不能重新遍历
+                    if (consumed) {
+                        consumeAll()
+                        break
+                    }
+                    if (dispatchInvalidated) break
+                }
+            } while (dispatchInvalidated && !consumed)
+        } finally {
+            dispatching = false
+        }
+        return consumed
+    }
+
+    /**
+     * 剩下的订阅不再收到当前事件
+     */
+    private fun consumeAll() {
+        val names = table.keyNames
+        val pending = table.keyPending
+        for (slot in 0 until table.keySize) {
+            if (names[slot] == null || pending[slot] === UNSET) continue
+            if (pending[slot] === CALL) {
+                table.keyCallSeen[slot] = callCount.get()
             }
-            item.setValue(value ?: NULL)
+            pending[slot] = UNSET
         }
     }
 
+    /**
+     * @return 回调中是否调用了 [LiveEventBus.consume]
+     */
+    private fun considerNotify(slot: Int): Boolean {
+        val keySlot = table.subKeys[slot]
+        val pending = table.keyPending[keySlot]
+        if (pending === UNSET) return false
+        val observer = table.observers[slot] ?: return false
+        val key = table.keyNames[keySlot] ?: return false
+        // 先标记为已消费，回调中发出的新事件不会被覆盖
+        table.keyPending[keySlot] = UNSET
+        // 消费完 call 事件就同步进度
+        if (pending === CALL) {
+            table.keyCallSeen[keySlot] = callCount.get()
+        }
+        @Suppress("UNCHECKED_CAST")
+        return dispatch(key, observer, value as T)
+    }
+
     /**
      * @param owner
      * @param key an event only can be consumed once by same key
      * @param observer
+     * @return 可以 O(1) 取消的订阅句柄，可以在任意线程取消
      */
-    @MainThread
+    @AnyThread
     fun observe(
         owner: LifecycleOwner,
         key: String = getKey(owner),
         observer: Observer<in T>
-    ) {
-        val keyWrapper = KeyWrapper(key, owner, observer)
-        onObserve(keyWrapper)
-        super.observe(owner.get(), getObserverWrapper(key, observer))
+    ): Subscription {
+        return subscribe(owner, key, observer, false, SubscriptionTable.DEFAULT_PRIORITY, DEFAULT_MIN_STATE, null)
+    }
+
+    /**
+     * @param priority 越大越先收到回调，默认 0，同优先级按注册顺序；回调中可以调用 [LiveEventBus.consume] 阻止后面的订阅收到当前事件
+     */
+    @AnyThread
+    fun observe(
+        owner: LifecycleOwner,
+        key: String = getKey(owner),
+        priority: Int,
+        observer: Observer<in T>
+    ): Subscription {
+        return subscribe(owner, key, observer, false, priority, DEFAULT_MIN_STATE, null)
+    }
+
+    /**
+     * @param minState 订阅在 [owner] 的生命周期 >= [minState] 时才会收到回调，可以是 CREATED、STARTED 或者 RESUMED，
+     * 例如 RESUMED 时被 Dialog 遮挡的页面不会更新；非活跃期间只标记 ownerKey 有待消费的值，活跃时补发一次最后一个事件
+     */
+    @AnyThread
+    fun observe(
+        owner: LifecycleOwner,
+        key: String = getKey(owner),
+        priority: Int = SubscriptionTable.DEFAULT_PRIORITY,
+        minState: Lifecycle.State,
+        observer: Observer<in T>
+    ): Subscription {
+        require(minState.isAtLeast(Lifecycle.State.CREATED)) {
+            "minState must be CREATED, STARTED or RESUMED: $minState"
+        }
+        return subscribe(owner, key, observer, false, priority, minState, null)
     }
 
     override fun observe(
@@ -104,8 +347,8 @@ class EventLiveData<T>(val sticky: Boolean = true) : MutableLiveData<T>() {
         owner: LifecycleOwner,
         key: String? = null,
         crossinline block: ((T?) -> Unit)
-    ) {
-        observe(owner, key ?: getKey(owner), Observer {
+    ): Subscription {
+        return observe(owner, key ?: getKey(owner), Observer {
             block(it)
         })
     }
@@ -117,8 +360,8 @@ class EventLiveData<T>(val sticky: Boolean = true) : MutableLiveData<T>() {
         owner: LifecycleOwner,
         key: String? = null,
         crossinline block: ((T) -> Unit)
-    ) {
-        observe(owner, key ?: getKey(owner), Observer {
+    ): Subscription {
+        return observe(owner, key ?: getKey(owner), Observer {
             require(lastIsCall == false) {
                 "observeNonNull unSupport observe Call, use observe"
             }
@@ -126,31 +369,67 @@ class EventLiveData<T>(val sticky: Boolean = true) : MutableLiveData<T>() {
         })
     }
 
-    @MainThread
+    /**
+     * owner 低于 STARTED 时按 [backlog] 积压事件，回到 STARTED 时按顺序补发，而不是只补发最后一个
+     */
+    @AnyThread
+    fun observe(
+        owner: LifecycleOwner,
+        key: String = getKey(owner),
+        priority: Int = SubscriptionTable.DEFAULT_PRIORITY,
+        backlog: BacklogPolicy,
+        observer: Observer<in T>
+    ): Subscription {
+        return subscribe(owner, key, observer, false, priority, DEFAULT_MIN_STATE, EventBacklog(backlog))
+    }
+
+    /**
+     * 粘性和非粘性两个通道共用同一个 [backlog]，积压的事件保持发送顺序
+     */
+    @AnyThread
+    internal fun observe(
+        owner: LifecycleOwner,
+        key: String,
+        priority: Int,
+        backlog: EventBacklog,
+        observer: Observer<in T>
+    ): Subscription {
+        return subscribe(owner, key, observer, false, priority, DEFAULT_MIN_STATE, backlog)
+    }
+
+    @AnyThread
     override fun observeForever(observer: Observer<in T>) {
         observeForever(null, observer.toString(), observer)
     }
 
-    @MainThread
+    @AnyThread
     fun observeForever(
         owner: LifecycleOwner? = null,
         key: String? = null,
         observer: Observer<in T>
-    ) {
-        val k = key ?: getKey(owner)
-        val keyWrapper = KeyWrapper(k, owner, observer)
-        onObserve(keyWrapper)
-        super.observeForever(getObserverWrapper(k, observer).also {
-            foreverObserverMap[keyWrapper] = it
-        })
+    ): Subscription {
+        return subscribe(owner, key ?: getKey(owner), observer, true, SubscriptionTable.DEFAULT_PRIORITY, DEFAULT_MIN_STATE, null)
+    }
+
+    /**
+     * @param priority 见 [observe]
+     */
+    @AnyThread
+    fun observeForever(
+        owner: LifecycleOwner? = null,
+        key: String? = null,
+        priority: Int,
+        observer: Observer<in T>
+    ): Subscription {
+        return subscribe(owner, key ?: getKey(owner), observer, true, priority, DEFAULT_MIN_STATE, null)
     }
 
     inline fun observeForever(
         owner: LifecycleOwner?,
         key: String? = null,
         crossinline block: ((T?) -> Unit)
-    ) {
-        observeForever(owner, key, Observer {
+    ): Subscription {
+        return observeForever(owner, key, Observer {
             require(lastIsCall == false) {
                 "observeNonNull unSupport observe Call, use observe"
             }
@@ -162,8 +441,8 @@ class EventLiveData<T>(val sticky: Boolean = true) : MutableLiveData<T>() {
         owner: LifecycleOwner?,
         key: String? = null,
         crossinline block: ((T) -> Unit)
-    ) {
-        observeForever(owner, key, Observer {
+    ): Subscription {
+        return observeForever(owner, key, Observer {
             require(lastIsCall == false) {
                 "observeNonNull unSupport observe Call, use observe"
             }
@@ -171,33 +450,234 @@ class EventLiveData<T>(val sticky: Boolean = true) : MutableLiveData<T>() {
         })
     }
 
-    private fun removeObserver(keyWrapper: KeyWrapper, observer: Observer<in T>) {
-        super.removeObserver(observer)
-        remove(keyWrapper)
+    /**
+     * 只接收 [selector] 提取的 key 等于 [expected] 的事件，不匹配的订阅在分发时不会被遍历。
+     * 不接收 [call] 发出的事件。
+     *
+     * 和普通订阅有两点不同：
+     * * 没有优先级，在所有普通订阅之后按注册顺序回调，普通订阅 [LiveEventBus.consume] 之后不再收到
+     * * 不参与同一个 ownerKey 只回调一次的规则，同一个 ownerKey 的普通订阅和过滤订阅都会收到
+     *
+     * @param selector 请复用同一个实例，同一个 selector 的订阅共用一份索引
+     * @param ownerKey 只用于 trace 和 [ObserverWatchdog] 的标识
+     * @param forever true: 直到 [owner] 销毁都会收到回调；false: 仅在 [owner] 的生命周期 >= STARTED 时收到回调，
+     * 非活跃期间只保留最后一个匹配的事件，活跃时补发
+     */
+    @AnyThread
+    fun observeFiltered(
+        owner: LifecycleOwner,
+        selector: KeySelector<T>,
+        expected: Any?,
+        ownerKey: String = getKey(owner),
+        forever: Boolean = false,
+        observer: Observer<in T>
+    ): FilteredObserver<T> {
+        val subscription = FilteredObserver(this, selector, expected, ownerKey, owner.get(), forever, observer)
+        if (isMainThread()) {
+            addFilteredObserver(subscription)
+        } else {
+            mainScheduler.post(Runnable {
+                addFilteredObserver(subscription)
+            })
+        }
+        return subscription
     }
 
+    @MainThread
+    private fun addFilteredObserver(subscription: FilteredObserver<T>) {
+        // 注册之前已经取消
+        if (subscription.removed) return
+        if (subscription.owner?.lifecycle?.currentState == Lifecycle.State.DESTROYED) {
+            subscription.removed = true
+            return
+        }
+        val index = filterIndex ?: FilterIndex(this).also {
+            filterIndex = it
+        }
+        index.add(subscription, if (lastIsCall == true) null else value)
+        updateObserved()
+    }
+
+    @MainThread
+    internal fun removeFilteredObserver(subscription: FilteredObserver<T>) {
+        val index = filterIndex ?: return
+        index.remove(subscription)
+        if (index.isEmpty()) {
+            filterIndex = null
+            updateObserved()
+        }
+    }
+
+    /**
+     * 耗时只和 [observer] 的订阅数量有关
+     */
+    @AnyThread
     override fun removeObserver(observer: Observer<in T>) {
-        super.removeObserver(observer)
-        foreverObserverMap.keys.find {
-            it.observer == observer
-        }?.let {
-            foreverObserverMap.remove(it)
+        if (!isMainThread()) {
+            enqueue(RemoveObserverOp(observer))
+            return
+        }
+        drainPendingOps()
+        while (true) {
+            val slot = table.slotOf(observer)
+            if (slot == SubscriptionTable.NO_SLOT) break
+            removeSubscription(slot)
+        }
+    }
+
+    /**
+     * 取消 [owner] 在当前 [EventLiveData] 上的所有订阅，耗时只和 [owner] 的订阅数量有关
+     */
+    @AnyThread
+    override fun removeObservers(owner: LifecycleOwner) {
+        if (!isMainThread()) {
+            enqueue(RemoveOwnerOp(owner))
+            return
         }
+        drainPendingOps()
+        ownerHooks[owner.get()]?.clear()
+    }
+
+    override fun hasObservers(): Boolean = table.subscriptionCount > 0 || filterIndex != null
+
+    /**
+     * 订阅的有无变化时通知 [observedListener]
+     */
+    private fun updateObserved() {
+        val observed = hasObservers()
+        if (observed == this.observed) return
+        this.observed = observed
+        val eventType = eventType ?: return
+        observedListener?.invoke(eventType, observed)
+    }
+
+    override fun hasActiveObservers(): Boolean {
+        val slots = table.activeSlots()
+        for (i in 0 until table.activeSlotCount) {
+            if (table.isActive(slots[i])) return true
+        }
+        return false
     }
 
     fun LifecycleOwner.get() = if (this is Fragment && view != null) viewLifecycleOwner else this
 
-    private fun onObserve(keyWrapper: KeyWrapper) {
-        val key = keyWrapper.key
-        val owner = keyWrapper.lifecycleOwner
-        if (keyMap[key] == null) {
-            keyMap[key] = ArrayList(4)
-        }
-        keyMap[key]?.add(keyWrapper)
-        (owner?.get())?.lifecycle?.addObserver(OnDestroyLifecycleObserver(keyWrapper, this))
-        isObservedMap[key] = true
-        if (tempValueMap[key] == null) {
-            tempValueMap[key] = if (!sticky || value == null) {
+    private fun subscribe(
+        owner: LifecycleOwner?,
+        key: String,
+        observer: Observer<in T>,
+        forever: Boolean,
+        priority: Int,
+        minState: Lifecycle.State,
+        backlog: EventBacklog?
+    ): Subscription {
+        if (!isMainThread()) {
+            return PendingSubscription(this, owner, key, observer, forever, priority, minState, backlog).also {
+                enqueue(it)
+            }
+        }
+        // 保证和之前子线程发起的订阅的顺序
+        drainPendingOps()
+        val subscription = SlotSubscription(this)
+        onObserve(owner?.get(), key, observer, forever, priority, minState, backlog, subscription)
+        return subscription
+    }
+
+    @AnyThread
+    private fun enqueue(op: Any) {
+        pendingOps.offer(op)
+        if (drainScheduled.compareAndSet(false, true)) {
+            mainScheduler.post(drainRunnable)
+        }
+    }
+
+    @MainThread
+    private fun drainPendingOps() {
+        while (true) {
+            when (val op = pendingOps.poll() ?: return) {
+                is PendingSubscription<*> -> {
+                    if (op.cancelled) {
+                        detach(op)
+                    } else if (op.slot == SubscriptionTable.NO_SLOT) {
+                        @Suppress("UNCHECKED_CAST")
+                        op as PendingSubscription<T>
+                        onObserve(op.owner?.get(), op.key, op.observer, op.forever, op.priority, op.minState, op.backlog, op)
+                    }
+                }
+                is ReusableSlot<*> -> {
+                    @Suppress("UNCHECKED_CAST")
+                    unbindReusable(op as ReusableSlot<T>)
+                }
+                is SlotSubscription -> detach(op)
+                is RemoveObserverOp<*> -> {
+                    @Suppress("UNCHECKED_CAST")
+                    removeObserver(op.observer as Observer<in T>)
+                }
+                is RemoveOwnerOp -> removeObservers(op.owner)
+            }
+        }
+    }
+
+    /**
+     * @param subscription 注册成功后写入槽位
+     */
+    @MainThread
+    private fun onObserve(
+        owner: LifecycleOwner?,
+        key: String,
+        observer: Observer<in T>,
+        forever: Boolean,
+        priority: Int,
+        minState: Lifecycle.State,
+        backlog: EventBacklog?,
+        subscription: SlotSubscription
+    ) {
+        if (owner != null && owner.lifecycle.currentState == Lifecycle.State.DESTROYED) {
+            return
+        }
+        val keySlot = acquirePendingKey(key)
+        val active = forever || owner!!.lifecycle.currentState.isAtLeast(minState)
+        val hook = if (owner == null) null else ownerHooks[owner] ?: OwnerHook(owner).also {
+            ownerHooks[owner] = it
+        }
+        val slot = table.add(
+            observer,
+            keySlot,
+            (if (forever) FLAG_FOREVER else 0) or (if (active) FLAG_ACTIVE else 0),
+            hook,
+            priority,
+            minState,
+            if (forever) null else backlog
+        )
+        if (hook != null) {
+            hook.add(slot)
+            // 第一次添加时会同步回放生命周期事件，此时槽位的状态已经是最新的
+            if (hook.count == 1) {
+                owner!!.lifecycle.addObserver(hook)
+            }
+        }
+        subscription.generation = table.subGenerations[slot]
+        subscription.slot = slot
+        updateObserved()
+        if (!active && !forever && backlog != null) {
+            // 已有的粘性事件作为积压的第一个事件
+            when (val pending = table.keyPending[keySlot]) {
+                UNSET -> Unit
+                NULL, CALL -> backlog.offer(null)
+                else -> backlog.offer(pending)
+            }
+        }
+        if (active) {
+            notifyAdded(slot)
+        }
+    }
+
+    /**
+     * 新的 ownerKey 根据最后一个事件初始化待消费的值
+     */
+    private fun acquirePendingKey(key: String): Int {
+        val keySlot = table.acquireKey(key)
+        if (table.keyPending[keySlot] == null) {
+            table.keyPending[keySlot] = if (!sticky || value == null) {
                 UNSET
             } else {
                 value
@@ -206,140 +686,397 @@ class EventLiveData<T>(val sticky: Boolean = true) : MutableLiveData<T>() {
         // 最后一次是 setValue
         if (lastIsCall == false && sticky) {
             if (value == null) {
-                tempValueMap[key] = NULL
+                table.keyPending[keySlot] = NULL
             }
         }
         // 最后一次是 call 事件
         if (lastIsCall == true && callCount.get() > 0 && sticky) {
-            if (callMap.getOrDefault(key, 0) < callCount.get()) {
-                tempValueMap[key] = CALL
+            if (table.keyCallSeen[keySlot] < callCount.get()) {
+                table.keyPending[keySlot] = CALL
             }
         }
+        return keySlot
     }
 
-    private fun getObserverWrapper(
-        key: String,
-        observer: Observer<in T>
-    ): Observer<T> {
-        return Observer<T> {
-            if (tempValueMap[key] === UNSET) return@Observer
+    /**
+     * 补发新的活跃订阅待消费的值
+     */
+    private fun notifyAdded(slot: Int) {
+        if (dispatching) {
+            // 正在分发，重新遍历一次
+            dispatchInvalidated = true
+        } else {
+            considerNotify(slot)
+        }
+    }
+
+    /**
+     * 还在订阅表中时只修改 ownerKey 和绑定标记，否则重新注册到 [ReusableSlot.parent]
+     */
+    @MainThread
+    internal fun bindReusable(handle: ReusableSlot<T>, key: String) {
+        drainPendingOps()
+        val slot = handle.slot
+        if (slot == SubscriptionTable.NO_SLOT || !table.isAlive(slot, handle.generation)) {
+            handle.cancelled = false
+            handle.slot = SubscriptionTable.NO_SLOT
+            onObserve(handle.parent.get(), key, handle.observer, handle.forever, handle.priority, DEFAULT_MIN_STATE, null, handle)
+            return
+        }
+        if (table.keyNames[table.subKeys[slot]] != key) {
+            table.rebindKey(slot, acquirePendingKey(key))
+        } else if (table.isBound(slot)) {
+            return
+        }
+        table.setBound(slot, true)
+        if (table.isActive(slot)) {
+            notifyAdded(slot)
+        }
+    }
+
+    /**
+     * 保留槽位、顺序和 ownerKey，只清除绑定标记；同一个 key 解绑期间的事件在再次绑定时补发
+     */
+    @MainThread
+    internal fun unbindReusable(handle: ReusableSlot<T>) {
+        drainPendingOps()
+        val slot = handle.slot
+        if (slot != SubscriptionTable.NO_SLOT && table.isAlive(slot, handle.generation)) {
+            table.setBound(slot, false)
+        }
+    }
+
+    @MainThread
+    private fun detach(subscription: SlotSubscription) {
+        val slot = subscription.slot
+        if (slot != SubscriptionTable.NO_SLOT && table.isAlive(slot, subscription.generation)) {
+            removeSubscription(slot)
+        }
+    }
+
+    private fun removeSubscription(slot: Int) {
+        @Suppress("UNCHECKED_CAST")
+        (table.subOwners[slot] as EventLiveData<T>.OwnerHook?)?.remove(slot)
+        table.remove(slot)
+        updateObserved()
+    }
+
+    /**
+     * 按顺序补发积压的事件。非活跃期间 ownerKey 待消费的值都已经在积压中，直接标记为已消费
+     */
+    private fun drainBacklog(slot: Int, backlog: EventBacklog) {
+        val keySlot = table.subKeys[slot]
+        if (table.keyPending[keySlot] === CALL) {
+            table.keyCallSeen[keySlot] = callCount.get()
+        }
+        table.keyPending[keySlot] = UNSET
+        val generation = table.subGenerations[slot]
+        val observer = table.observers[slot] ?: return
+        val key = table.keyNames[keySlot] ?: return
+        // 回调中可能取消订阅或者 owner 再次变为非活跃
+        while (backlog.size > 0 && table.isAlive(slot, generation) && table.isActive(slot)) {
             @Suppress("UNCHECKED_CAST")
-            observer.onChanged(value as T)
-            // 消费完 call 事件就同步进度
-            if (tempValueMap[key] === CALL) {
-                callMap[key] = callCount.get()
+            dispatch(key, observer, backlog.poll() as T)
+        }
+    }
+
+    /**
+     * @return 回调中是否调用了 [LiveEventBus.consume]
+     */
+    internal fun dispatch(key: String, observer: Observer<in T>, value: T): Boolean {
+        val tracer = BusTrace.tracer
+        tracer?.beginSection("${BusTrace.label("dispatch", eventType)} -> $key")
+        // 回调中可能分发其他事件，保存外层的状态
+        val outerConsumed = consumed
+        consumed = false
+        var result: Boolean
+        try {
+            val watchdog = watchdog
+            if (watchdog != null && watchdog.shouldSample()) {
+                val start = System.nanoTime()
+                observer.onChanged(value)
+                watchdog.onCallback(eventType, key, observer, System.nanoTime() - start)
+            } else {
+                observer.onChanged(value)
             }
-            tempValueMap[key] = UNSET
+        } finally {
+            result = consumed
+            consumed = outerConsumed
+            tracer?.endSection()
         }
+        return result
     }
 
-    private fun onClear(keyWrapper: KeyWrapper) {
-        val observer = foreverObserverMap[keyWrapper]
-        if (observer != null) {
-            removeObserver(keyWrapper, observer)
-        } else {
-            remove(keyWrapper)
+    /**
+     * 一个 [LifecycleOwner] 在当前 [EventLiveData] 上的所有订阅槽位
+     */
+    private inner class OwnerHook(private val owner: LifecycleOwner) : LifecycleEventObserver {
+        private var slots = IntArray(2)
+        var count = 0
+            private set
+
+        fun add(slot: Int) {
+            if (count == slots.size) {
+                slots = slots.copyOf(count * 2)
+            }
+            table.subOwnerPositions[slot] = count
+            slots[count++] = slot
+        }
+
+        fun remove(slot: Int) {
+            val position = table.subOwnerPositions[slot]
+            val last = slots[--count]
+            slots[position] = last
+            table.subOwnerPositions[last] = position
+            if (count == 0) {
+                owner.lifecycle.removeObserver(this)
+                ownerHooks.remove(owner)
+            }
+        }
+
+        fun clear() {
+            owner.lifecycle.removeObserver(this)
+            ownerHooks.remove(owner)
+            val removed = slots.copyOf(count)
+            count = 0
+            for (slot in removed) {
+                table.remove(slot)
+            }
+            updateObserved()
+        }
+
+        override fun onStateChanged(source: LifecycleOwner, event: Lifecycle.Event) {
+            val state = owner.lifecycle.currentState
+            if (state == Lifecycle.State.DESTROYED) {
+                clear()
+                return
+            }
+            var i = 0
+            // 回调中可能新增订阅
+            while (i < count) {
+                val slot = slots[i++]
+                if (table.subFlags[slot] and FLAG_FOREVER != 0) continue
+                val active = state.isAtLeast(table.subMinStates[slot]!!)
+                if (table.isLifecycleActive(slot) == active) continue
+                table.setActive(slot, active)
+                // 解绑的订阅在再次绑定时补发
+                if (active && table.isBound(slot)) {
+                    val backlog = table.subBacklogs[slot]
+                    if (backlog != null) {
+                        drainBacklog(slot, backlog)
+                    } else {
+                        considerNotify(slot)
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 通过 (槽位, generation) 定位订阅，槽位被复用后取消不会影响新的订阅
+     */
+    internal open class SlotSubscription(private val liveData: EventLiveData<*>) : Subscription {
+        @Volatile
+        var slot = SubscriptionTable.NO_SLOT
+        var generation = 0
+
+        @Volatile
+        var cancelled = false
+
+        @AnyThread
+        override fun unsubscribe() {
+            cancelled = true
+            if (isMainThread()) {
+                liveData.drainPendingOps()
+                liveData.detach(this)
+            } else {
+                liveData.enqueue(this)
+            }
         }
     }
 
-    private class OnDestroyLifecycleObserver<T>(
-        private val keyWrapper: KeyWrapper,
-        private val livaData: EventLiveData<T>
-    ) : LifecycleObserver {
-        @OnLifecycleEvent(Lifecycle.Event.ON_DESTROY)
-        fun onDestroyView() {
-            livaData.onClear(keyWrapper)
+    /**
+     * [ReusableSubscription] 在一个 [EventLiveData] 上的订阅，解绑后可以再次绑定
+     */
+    internal class ReusableSlot<T>(
+        private val liveData: EventLiveData<T>,
+        val parent: LifecycleOwner,
+        val observer: Observer<in T>,
+        val forever: Boolean,
+        val priority: Int
+    ) : SlotSubscription(liveData) {
+        @MainThread
+        fun bind(key: String) {
+            liveData.bindReusable(this, key)
+        }
+
+        /**
+         * 子线程调用时排队到主线程解绑，和之后主线程的 [bind] 保持顺序
+         */
+        @AnyThread
+        override fun unsubscribe() {
+            if (isMainThread()) {
+                liveData.unbindReusable(this)
+            } else {
+                liveData.enqueue(this)
+            }
         }
     }
 
-    data class KeyWrapper(
+    /**
+     * 子线程发起的订阅，在主线程注册到订阅表
+     */
+    private class PendingSubscription<T>(
+        liveData: EventLiveData<T>,
+        val owner: LifecycleOwner?,
         val key: String,
-        val lifecycleOwner: LifecycleOwner? = null,
-        val observer: Observer<*>? = null
-    )
+        val observer: Observer<in T>,
+        val forever: Boolean,
+        val priority: Int,
+        val minState: Lifecycle.State,
+        val backlog: EventBacklog?
+    ) : SlotSubscription(liveData)
+
+    private class DeferredEvent<T>(
+        private val liveData: EventLiveData<T>,
+        private val value: T?,
+        private val isCall: Boolean,
+        val depth: Int
+    ) {
+        fun run() {
+            liveData.fanOut(value, isCall)
+        }
+    }
+
+    /**
+     * 开启 trace 时 post 给 LiveData 的值
+     */
+    private class TracedPost(val value: Any?, val cookie: Int)
+
+    private class RemoveObserverOp<T>(val observer: Observer<T>)
+
+    private class RemoveOwnerOp(val owner: LifecycleOwner)
 
     override fun toString(): String {
         val sb = StringBuilder()
 
-        sb.append("\ntempValueMap = ")
-        if (tempValueMap.isNotEmpty()) {
-            tempValueMap.keys.forEachIndexed { index, key ->
-                if (index == 0) {
-                    sb.append("{")
-                }
-                sb.append(key)
-                    .append(":")
-                    .append(tempValueMap[key])
-                if (index == tempValueMap.keys.size - 1) {
-                    sb.append("}")
-                } else {
-                    sb.append(", ")
-                }
-            }
-        } else {
-            sb.append("{}")
-        }
-
-        sb.append("\nforeverObserverMap = ")
-        if (foreverObserverMap.keys.isEmpty()) {
+        sb.append("\nkeys = ")
+        if (table.keySize == 0) {
             sb.append("{}")
         } else {
-            foreverObserverMap.keys.forEachIndexed { index, key ->
-                if (index == 0) {
-                    sb.append("{")
+            sb.append("{")
+            for (slot in 0 until table.keySize) {
+                val key = table.keyNames[slot] ?: continue
+                if (sb.last() != '{') {
+                    sb.append(", ")
                 }
                 sb.append(key)
                     .append(":")
-                    .append(foreverObserverMap[key])
-                if (index == foreverObserverMap.keys.size - 1) {
-                    sb.append("}")
-                } else {
-                    sb.append(", ")
-                }
+                    .append(table.keyPending[slot])
             }
+            sb.append("}")
         }
 
-        sb.append("\nisObservedMap = ")
-        if (isObservedMap.isEmpty) {
+        sb.append("\nsubscriptions = ")
+        if (table.subscriptionCount == 0) {
             sb.append("{}")
         } else {
-            isObservedMap.keys.forEachIndexed { index, key ->
-                if (index == 0) {
-                    sb.append("{")
-                }
-                sb.append(key)
-                    .append(":")
-                    .append(isObservedMap[key])
-                if (index == isObservedMap.keys.size - 1) {
-                    sb.append("}")
-                } else {
+            sb.append("{")
+            for (slot in 0 until table.size) {
+                val observer = table.observers[slot] ?: continue
+                if (sb.last() != '{') {
                     sb.append(", ")
                 }
+                sb.append(table.keyNames[table.subKeys[slot]])
+                    .append(":")
+                    .append(observer)
+                    .append(if (table.subFlags[slot] and FLAG_FOREVER != 0) "(forever)" else "")
+                    .append(if (table.isActive(slot)) "(active)" else "")
             }
+            sb.append("}")
         }
         val address = super.toString()
         return "$address:\n$sb"
     }
 
-    private fun remove(keyWrapper: KeyWrapper) {
-        foreverObserverMap.remove(keyWrapper)
-        keyMap[keyWrapper.key]?.remove(keyWrapper)
-        if (keyMap[keyWrapper.key].isNullOrEmpty()) {
-            tempValueMap.remove(keyWrapper.key)
-            callMap.remove(keyWrapper.key)
-            isObservedMap.remove(keyWrapper.key)
-        }
-    }
-
     companion object {
+        /**
+         * 每个 owner 类型默认的 ownerKey
+         */
+        private val ownerKeys = ConcurrentHashMap<Class<*>, String>()
+
         @JvmStatic
         fun getKey(owner: LifecycleOwner?): String =
             if (owner != null) {
-                owner::class.qualifiedName ?: owner::class.java.name ?: ""
+                getKey(owner.javaClass)
             } else {
                 SystemClock.currentThreadTimeMillis().toString()
             }
 
+        internal fun getKey(clazz: Class<*>): String =
+            ownerKeys[clazz] ?: (clazz.kotlin.qualifiedName ?: clazz.name).also {
+                ownerKeys.putIfAbsent(clazz, it)
+            }
+
+        /**
+         * 通过 [LiveEventBus.setObserverWatchdog] 安装
+         */
+        @Volatile
+        internal var watchdog: ObserverWatchdog? = null
+
+        /**
+         * 有类型的 [EventLiveData] 从没有订阅变为有订阅、或者反过来时在主线程回调，[LiveEventBus] 用来启停跨进程的读线程
+         */
+        @Volatile
+        internal var observedListener: ((eventType: Class<*>, observed: Boolean) -> Unit)? = null
+
+        internal val mainHandler by lazy {
+            Handler(Looper.getMainLooper())
+        }
+
+        /**
+         * 正在分发的事件的级联层数，0 表示不在分发中，只在主线程访问
+         */
+        private var cascadeDepth = 0
+
+        /**
+         * 分发过程中发出的事件，当前这一轮分发结束后按顺序分发，只在主线程访问
+         */
+        private val deferred = ArrayDeque<DeferredEvent<*>>()
+
+        private const val DEFAULT_MAX_CASCADE_DEPTH = 32
+
+        /**
+         * 和 [LiveData] 一致，STARTED 之后活跃
+         */
+        private val DEFAULT_MIN_STATE = Lifecycle.State.STARTED
+
+        /**
+         * 通过 [LiveEventBus.setMaxCascadeDepth] 设置
+         */
+        @Volatile
+        internal var maxCascadeDepth = DEFAULT_MAX_CASCADE_DEPTH
+
+        /**
+         * 当前回调是否调用了 [consume]，只在主线程访问
+         */
+        private var consumed = false
+
+        @MainThread
+        internal fun consume() {
+            consumed = true
+        }
+
+        /**
+         * 主线程的判断和 post，单元测试中替换成手动推进的实现
+         */
+        @VisibleForTesting
+        @Volatile
+        internal var mainScheduler: MainScheduler = MainScheduler
+
+        @JvmStatic
+        internal fun isMainThread() = mainScheduler.isMainThread()
+
         private val UNSET = Any()
         private val NULL = Any()
         private val CALL = Any()
@@ -0,0 +1,120 @@
+package com.lwjlol.liveeventbus
+
+import androidx.annotation.AnyThread
+import androidx.annotation.MainThread
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.TimeoutException
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * 可以被回复的请求事件，[R] 为回复的类型，例如 `class UserRequest(val id: Long) : BusRequest<User>()`。
+ *
+ * 请求通过 [LiveEventBus.request] 发送，像普通事件一样按类型分发给订阅者（非粘性）；
+ * 订阅者调用 [reply] 回复，回复直接交给等待的调用方，不经过订阅表。
+ * 同一个实例同时只能用于一次请求。
+ */
+abstract class BusRequest<R> {
+    /**
+     * 由 [LiveEventBus.request] 分配，0 表示没有发送过
+     */
+    @Volatile
+    var correlationId = 0L
+        internal set
+
+    /**
+     * @return false: 请求已经被回复、超时或者取消
+     */
+    @AnyThread
+    fun reply(response: R): Boolean = BusRequests.complete(correlationId, response, null)
+
+    /**
+     * 回复一个错误，调用方的 [ResponseCallback.onError] 收到 [error]
+     * @return false: 请求已经被回复、超时或者取消
+     */
+    @AnyThread
+    fun replyError(error: Throwable): Boolean = BusRequests.complete(correlationId, null, error)
+}
+
+/**
+ * 请求的结果，只会回调一次，在主线程回调
+ */
+interface ResponseCallback<in R> {
+    @MainThread
+    fun onResponse(response: R)
+
+    /**
+     * 超时时 [error] 为 [TimeoutException]
+     */
+    @MainThread
+    fun onError(error: Throwable)
+}
+
+/**
+ * 等待回复的请求，每个请求在表中只占一项，回复、超时或取消后立即删除
+ */
+internal object BusRequests {
+    private val nextId = AtomicLong(0)
+    private val pending = ConcurrentHashMap<Long, PendingRequest>()
+
+    val pendingCount: Int
+        get() = pending.size
+
+    fun register(request: BusRequest<*>, timeoutMillis: Long, callback: ResponseCallback<*>): PendingRequest {
+        val id = nextId.incrementAndGet()
+        request.correlationId = id
+        val pendingRequest = PendingRequest(id, callback)
+        pending[id] = pendingRequest
+        if (timeoutMillis > 0) {
+            EventLiveData.mainHandler.postDelayed(pendingRequest, timeoutMillis)
+        }
+        return pendingRequest
+    }
+
+    fun complete(id: Long, response: Any?, error: Throwable?): Boolean {
+        val pendingRequest = pending.remove(id) ?: return false
+        EventLiveData.mainHandler.removeCallbacks(pendingRequest)
+        if (EventLiveData.isMainThread()) {
+            pendingRequest.deliver(response, error)
+        } else {
+            EventLiveData.mainHandler.post {
+                pendingRequest.deliver(response, error)
+            }
+        }
+        return true
+    }
+
+    fun cancel(id: Long) {
+        pending.remove(id)?.let {
+            EventLiveData.mainHandler.removeCallbacks(it)
+        }
+    }
+
+    /**
+     * 自身作为超时任务
+     */
+    class PendingRequest(
+        private val id: Long,
+        private val callback: ResponseCallback<*>
+    ) : Runnable, Subscription {
+        @Suppress("UNCHECKED_CAST")
+        fun deliver(response: Any?, error: Throwable?) {
+            if (error != null) {
+                callback.onError(error)
+            } else {
+                (callback as ResponseCallback<Any?>).onResponse(response)
+            }
+        }
+
+        override fun run() {
+            complete(id, null, TimeoutException("request $id timed out"))
+        }
+
+        /**
+         * 取消后不会再收到回调
+         */
+        @AnyThread
+        override fun unsubscribe() {
+            cancel(id)
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.lwjlol.liveeventbus
+
+import androidx.annotation.AnyThread
+import androidx.annotation.MainThread
+import java.util.concurrent.atomic.AtomicBoolean
+
+/**
+ * 按发送顺序分发事件：所有线程的事件在同一把锁下进入一个 FIFO 队列，入队的先后就是分发的顺序，主线程依次交给 [deliver]。
+ *
+ * 主线程发送时先分发队列中已有的事件再分发自己，所以子线程先发送的事件一定先被收到；
+ * 回调中再次发送的事件排在队尾，在当前事件的所有回调结束后才分发。
+ */
+internal class EventSequencer(
+    private val scheduler: MainScheduler = MainScheduler,
+    private val deliver: (event: Any, sticky: Boolean) -> Unit
+) {
+    private val lock = Any()
+    private var events = arrayOfNulls<Any>(INITIAL_CAPACITY)
+    private var stickies = BooleanArray(INITIAL_CAPACITY)
+    private var head = 0
+    private var size = 0
+
+    private val drainScheduled = AtomicBoolean(false)
+    private val drainRunnable = Runnable {
+        drainScheduled.set(false)
+        drain()
+    }
+
+    /**
+     * 只在主线程访问
+     */
+    private var draining = false
+
+    @AnyThread
+    fun offer(event: Any, sticky: Boolean, post: Boolean) {
+        synchronized(lock) {
+            add(event, sticky)
+        }
+        schedule(post)
+    }
+
+    @AnyThread
+    fun offerAll(events: Array<Any?>, stickies: BooleanArray, count: Int, post: Boolean) {
+        synchronized(lock) {
+            for (i in 0 until count) {
+                add(events[i]!!, stickies[i])
+            }
+        }
+        schedule(post)
+    }
+
+    private fun add(event: Any, sticky: Boolean) {
+        if (size == events.size) {
+            grow()
+        }
+        val index = (head + size) % events.size
+        events[index] = event
+        stickies[index] = sticky
+        size++
+    }
+
+    private fun grow() {
+        val capacity = events.size * 2
+        val grownEvents = arrayOfNulls<Any>(capacity)
+        val grownStickies = BooleanArray(capacity)
+        for (i in 0 until size) {
+            grownEvents[i] = events[(head + i) % events.size]
+            grownStickies[i] = stickies[(head + i) % events.size]
+        }
+        events = grownEvents
+        stickies = grownStickies
+        head = 0
+    }
+
+    private fun schedule(post: Boolean) {
+        if (!post && scheduler.isMainThread()) {
+            drain()
+        } else if (drainScheduled.compareAndSet(false, true)) {
+            scheduler.post(drainRunnable)
+        }
+    }
+
+    @MainThread
+    private fun drain() {
+        // 回调中发送的事件由外层的循环分发
+        if (draining) return
+        draining = true
+        try {
+            while (true) {
+                val event: Any
+                val sticky: Boolean
+                synchronized(lock) {
+                    if (size == 0) return
+                    event = events[head]!!
+                    sticky = stickies[head]
+                    events[head] = null
+                    head = (head + 1) % events.size
+                    size--
+                }
+                deliver(event, sticky)
+            }
+        } finally {
+            draining = false
+        }
+    }
+
+    private companion object {
+        const val INITIAL_CAPACITY = 16
+    }
+}
@@ -0,0 +1,77 @@
+package com.lwjlol.liveeventbus
+
+import android.os.Build
+import android.os.Trace
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * 事件分发的 trace 接口，通过 [LiveEventBus.setEventTracer] 安装，默认不安装。
+ *
+ * 未安装时所有埋点只有一次 null 判断，label 字符串也不会被创建。
+ * 埋点位置：
+ * * [LiveEventBus.send]：同步 section
+ * * 子线程 post 到主线程：async section，从 post 开始到 post 的值在主线程开始分发，同一个 [EventLiveData] 上被合并的 post 会提前结束
+ * * [LiveEventBus.sendAll]、[LiveEventBus.batch]、延迟发送和跨进程事件 post 到主线程：async section，从 post 开始到主线程开始分发
+ * * 每一个 Observer 回调：同步 section
+ */
+interface EventTracer {
+    fun beginSection(label: String)
+
+    fun endSection()
+
+    fun beginAsyncSection(label: String, cookie: Int)
+
+    fun endAsyncSection(label: String, cookie: Int)
+}
+
+/**
+ * 基于 [Trace] 的实现，可以直接在 systrace/Perfetto 中看到；async section 需要 Android Q 及以上。
+ */
+class SystemEventTracer : EventTracer {
+    override fun beginSection(label: String) {
+        // Trace 的 section name 最长 127
+        Trace.beginSection(if (label.length > MAX_LABEL_LENGTH) label.substring(0, MAX_LABEL_LENGTH) else label)
+    }
+
+    override fun endSection() {
+        Trace.endSection()
+    }
+
+    override fun beginAsyncSection(label: String, cookie: Int) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            Trace.beginAsyncSection(label, cookie)
+        }
+    }
+
+    override fun endAsyncSection(label: String, cookie: Int) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            Trace.endAsyncSection(label, cookie)
+        }
+    }
+
+    companion object {
+        private const val MAX_LABEL_LENGTH = 127
+    }
+}
+
+internal object BusTrace {
+    @JvmField
+    @Volatile
+    var tracer: EventTracer? = null
+
+    private val cookie = AtomicInteger(0)
+
+    /**
+     * 0 表示没有进行中的 async section
+     */
+    fun nextCookie(): Int {
+        var next = cookie.incrementAndGet()
+        if (next == 0) {
+            next = cookie.incrementAndGet()
+        }
+        return next
+    }
+
+    fun label(action: String, eventType: Class<*>?): String =
+        "LiveEventBus#$action ${eventType?.simpleName ?: "EventLiveData"}"
+}
@@ -1,12 +1,26 @@
 package com.lwjlol.liveeventbus
 
-import android.os.Looper
+import android.os.Process
+import android.os.SystemClock
+import android.util.Log
+import androidx.annotation.AnyThread
 import androidx.annotation.MainThread
 import androidx.annotation.RestrictTo
+import androidx.annotation.VisibleForTesting
 import androidx.collection.LruCache
 import androidx.lifecycle.Lifecycle
 import androidx.lifecycle.LifecycleOwner
 import androidx.lifecycle.Observer
+import java.nio.BufferOverflowException
+import java.nio.ByteBuffer
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.Executor
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.ThreadPoolExecutor
+import java.util.concurrent.TimeUnit
+import kotlin.coroutines.resume
+import kotlin.coroutines.resumeWithException
+import kotlin.coroutines.suspendCoroutine
 
 class LiveEventBus private constructor() {
     private val eventMap = LruCache<Class<*>, EventLiveData<*>>(DEFAULT_MAX_EVENT)
@@ -14,6 +28,100 @@ class LiveEventBus private constructor() {
 
     private var init = false
 
+    /**
+     * 拦截器链，注册时整体替换，send 时只读一次
+     */
+    @Volatile
+    private var interceptors: Array<EventInterceptor> = EMPTY_INTERCEPTORS
+    private val interceptorLock = Any()
+
+    /**
+     * 限流配置，key 为事件类型或者基本数据类型事件的 eventKey，修改时整体替换
+     */
+    @Volatile
+    private var rateLimiters: Map<Any, RateLimiter> = emptyMap()
+
+    private val topicRouter = TopicRouter()
+
+    @Volatile
+    private var sharedTransport: SharedEventTransport? = null
+
+    private val remoteEventListener by lazy {
+        RemoteEventListener()
+    }
+
+    private val workChannels = ConcurrentHashMap<Class<*>, WorkChannel<*>>()
+
+    /**
+     * key 为事件类型或者字符串
+     */
+    private val stateChannels = ConcurrentHashMap<Any, StateChannel<*>>()
+
+    private val timerWheel by lazy {
+        TimerWheel { expired ->
+            val batch = Batch(expired.size)
+            for (scheduled in expired) {
+                batch.send(scheduled.event, scheduled.sticky)
+            }
+            sendBatch(batch, true)
+        }
+    }
+
+    /**
+     * 预热等后台任务共用的一个低优先级线程，空闲一段时间后退出，下次提交时再创建
+     */
+    @VisibleForTesting
+    internal var backgroundExecutor: Executor = ThreadPoolExecutor(
+        0,
+        1,
+        BACKGROUND_KEEP_ALIVE_SECONDS,
+        TimeUnit.SECONDS,
+        LinkedBlockingQueue()
+    ) { task ->
+        Thread({
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND)
+            task.run()
+        }, BACKGROUND_THREAD_NAME).apply {
+            isDaemon = true
+        }
+    }
+
+    /**
+     * 按发送顺序分发，null 表示没有打开
+     */
+    @Volatile
+    private var sequencer: EventSequencer? = null
+
+    /**
+     * 需要跨进程发送的基本数据类型事件的 eventKey，修改时整体替换
+     */
+    @Volatile
+    private var sharedKeys: Set<String> = emptySet()
+
+    /**
+     * 需要跨进程发送的事件类型，key 为写入记录的类型 id，修改时整体替换
+     */
+    @Volatile
+    private var sharedTypes: Map<Int, Class<*>> = PRIMITIVE_EVENT_TYPES
+
+    /**
+     * 有订阅的事件类型和其中有订阅的通道数，持有 [interceptorLock] 访问
+     */
+    private val observedTypes = HashMap<Class<*>, Int>()
+
+    init {
+        EventLiveData.observedListener = { clazz, observed ->
+            synchronized(interceptorLock) {
+                val count = (observedTypes[clazz] ?: 0) + if (observed) 1 else -1
+                if (count > 0) {
+                    observedTypes[clazz] = count
+                } else {
+                    observedTypes.remove(clazz)
+                }
+                updateSharedReader()
+            }
+        }
+    }
 
     /**
      * @param maxCacheSize 最大的缓存事件数量
@@ -34,15 +142,71 @@ class LiveEventBus private constructor() {
         // 最大的粘性事件缓存
         private const val DEFAULT_MAX_STICKY_EVENT = 16
 
+        private val EMPTY_INTERCEPTORS = emptyArray<EventInterceptor>()
+
+        @PublishedApi
+        internal const val DEFAULT_BATCH_CAPACITY = 8
+
+        private const val FLAG_STICKY = 1
+
+        private val PRIMITIVE_EVENT_TYPES: Map<Int, Class<*>> = listOf(
+            PrimitiveStringEvent::class.java,
+            PrimitiveIntEvent::class.java,
+            PrimitiveLongEvent::class.java,
+            PrimitiveFloatEvent::class.java,
+            PrimitiveDoubleEvent::class.java,
+            PrimitiveBooleanEvent::class.java,
+            PrimitiveCharEvent::class.java
+        ).associateBy { typeId(it) }
+
+        /**
+         * 跨进程的类型 id，不同进程中同一个类的 id 相同
+         */
+        private fun typeId(clazz: Class<*>) = clazz.name.hashCode()
+
+        private val encodeBuffer = object : ThreadLocal<ByteBuffer>() {
+            override fun initialValue(): ByteBuffer = ByteBuffer.allocate(MAX_SHARED_EVENT_SIZE)
+        }
+
+        // 跨进程发送的事件编码后的最大长度
+        private const val MAX_SHARED_EVENT_SIZE = 16 * 1024
+
+        // 工作队列每个组默认最多积压的任务数量
+        private const val DEFAULT_WORK_CAPACITY = 1024
+
+        // 请求默认的超时时间
+        private const val DEFAULT_REQUEST_TIMEOUT = 10_000L
+
+        private const val BACKGROUND_THREAD_NAME = "LiveEventBus-background"
+
+        private const val BACKGROUND_KEEP_ALIVE_SECONDS = 10L
+
+        private const val POST_BATCH_TRACE_LABEL = "LiveEventBus#postAll"
+
+        private const val TAG = "LiveEventBus"
+
         val instance: LiveEventBus
             get() = Singleton.instance
 
+        /**
+         * 在 Observer 回调中调用，当前事件不再分发给同一个通道上优先级更低（或者同优先级后注册）的订阅，
+         * 带过滤条件的订阅也不会再收到。之后注册的粘性订阅仍然会收到最后一个事件。
+         */
+        @MainThread
+        @JvmStatic
+        fun consume() {
+            EventLiveData.consume()
+        }
+
+        /**
+         * 可以在任意线程调用，创建时加锁，保证同一个事件类型只会创建一个 [EventLiveData]
+         */
         @Suppress("UNCHECKED_CAST")
         private fun getLiveData(
             clazz: Class<*>,
             eventMap: LruCache<Class<*>, EventLiveData<*>>,
             stickyEventMap: LruCache<Class<*>, EventLiveData<*>>
-        ): Pair<EventLiveData<Any>, EventLiveData<Any>> {
+        ): Pair<EventLiveData<Any>, EventLiveData<Any>> = synchronized(eventMap) {
             val eventLiveData: EventLiveData<Any> = (eventMap[clazz] ?: createAndPutLiveData(
                 clazz,
                 false,
@@ -55,7 +219,25 @@ class LiveEventBus private constructor() {
                 eventMap,
                 stickyEventMap
             )) as EventLiveData<Any>
-            return eventLiveData to stickyLiveData
+            eventLiveData to stickyLiveData
+        }
+
+        /**
+         * 只取一个 [EventLiveData]，发送时使用，不会创建另一个
+         */
+        @Suppress("UNCHECKED_CAST")
+        private fun getChannel(
+            clazz: Class<*>,
+            sticky: Boolean,
+            eventMap: LruCache<Class<*>, EventLiveData<*>>,
+            stickyEventMap: LruCache<Class<*>, EventLiveData<*>>
+        ): EventLiveData<Any> = synchronized(eventMap) {
+            ((if (sticky) stickyEventMap[clazz] else eventMap[clazz]) ?: createAndPutLiveData(
+                clazz,
+                sticky,
+                eventMap,
+                stickyEventMap
+            )) as EventLiveData<Any>
         }
 
         private fun createAndPutLiveData(
@@ -64,7 +246,7 @@ class LiveEventBus private constructor() {
             eventMap: LruCache<Class<*>, EventLiveData<*>>,
             stickyEventMap: LruCache<Class<*>, EventLiveData<*>>
         ): EventLiveData<Any> {
-            val liveData = EventLiveData<Any>(sticky)
+            val liveData = EventLiveData<Any>(sticky, clazz)
             if (sticky) {
                 stickyEventMap.put(clazz, liveData)
             } else {
@@ -74,6 +256,36 @@ class LiveEventBus private constructor() {
         }
     }
 
+    /**
+     * 在共用的后台线程预先创建 [types] 的通道，以及跨进程类型的 [EventCodec]，适合在 `Application.onCreate` 中调用，
+     * 首屏第一次 [send]/[observe] 时不需要在主线程创建。通道在锁内创建和读取，主线程可以安全地使用。
+     * 超过 [init] 设置的缓存数量的类型会被淘汰。
+     */
+    @AnyThread
+    fun prewarm(types: Collection<Class<*>>) {
+        prewarm(object : PrewarmIndex {
+            override val eventTypes = types
+        })
+    }
+
+    /**
+     * 同 [prewarm]，另外预先计算 [PrewarmIndex.ownerTypes] 默认的 ownerKey
+     */
+    @AnyThread
+    fun prewarm(index: PrewarmIndex) {
+        backgroundExecutor.execute {
+            for (clazz in index.eventTypes) {
+                getLiveData(clazz, eventMap, stickyEventMap)
+                if (sharedTypes[typeId(clazz)] === clazz) {
+                    EventCodecs.get(clazz)
+                }
+            }
+            for (clazz in index.ownerTypes) {
+                EventLiveData.getKey(clazz)
+            }
+        }
+    }
+
     /**
      * @param clazz 为了类型安全, 指定事件 type class
      */
@@ -88,6 +300,340 @@ class LiveEventBus private constructor() {
         return PrimitiveBus(eventKey, eventMap, stickyEventMap)
     }
 
+    /**
+     * 安装慢回调检测，传 null 关闭
+     */
+    fun setObserverWatchdog(watchdog: ObserverWatchdog?) {
+        EventLiveData.watchdog = watchdog
+    }
+
+    /**
+     * 安装事件分发的 trace，传 null 关闭，例如 debug 包中安装 [SystemEventTracer]
+     */
+    fun setEventTracer(tracer: EventTracer?) {
+        BusTrace.tracer = tracer
+    }
+
+    /**
+     * 添加一个全局拦截器，按添加顺序执行
+     */
+    fun addInterceptor(interceptor: EventInterceptor) {
+        synchronized(interceptorLock) {
+            if (interceptors.contains(interceptor)) return
+            interceptors = interceptors + interceptor
+        }
+    }
+
+    fun removeInterceptor(interceptor: EventInterceptor) {
+        synchronized(interceptorLock) {
+            val index = interceptors.indexOf(interceptor)
+            if (index < 0) return
+            interceptors = if (interceptors.size == 1) {
+                EMPTY_INTERCEPTORS
+            } else {
+                interceptors.filterIndexed { i, _ -> i != index }.toTypedArray()
+            }
+        }
+    }
+
+    /**
+     * @param filter 分层的 topic，可以包含通配符 `+` 和 `#`，见 [TopicRouter]
+     */
+    fun onTopic(filter: String): TopicBus {
+        return TopicBus(filter, topicRouter)
+    }
+
+    /**
+     * 发送一个 topic 事件，只有匹配 [topic] 的订阅才会收到，非粘性。子线程调用会 post 到主线程分发。
+     *
+     * @param topic 具体的 topic，例如 `player/track/progress`，不能包含通配符
+     */
+    fun sendTopic(topic: String, value: Any? = null) {
+        val interceptors = interceptors
+        val event = TopicEvent(topic, value).let {
+            if (interceptors.isEmpty()) it else intercept(interceptors, it, false) ?: return
+        }
+        if (event !is TopicEvent) {
+            // 拦截器换成了普通事件，已经拦截过，不能再经过 send 的拦截器
+            if (!passRateLimit(event, false)) return
+            shareIfNeeded(event, false)
+            traceAndSend(event, false, false)
+            return
+        }
+        val sequencer = sequencer
+        if (sequencer != null) {
+            sequencer.offer(OrderedTopic(event), false, false)
+            return
+        }
+        if (EventLiveData.isMainThread()) {
+            dispatchTopic(event)
+        } else {
+            EventLiveData.mainHandler.post {
+                dispatchTopic(event)
+            }
+        }
+    }
+
+    private fun dispatchTopic(event: TopicEvent) {
+        val tracer = BusTrace.tracer
+        if (tracer == null) {
+            topicRouter.dispatch(event)
+            return
+        }
+        tracer.beginSection("LiveEventBus#sendTopic ${event.topic}")
+        try {
+            topicRouter.dispatch(event)
+        } finally {
+            tracer.endSection()
+        }
+    }
+
+    /**
+     * 和普通事件一起进入 [EventSequencer] 的 topic 事件，区分通过 [send] 发送的 [TopicEvent]
+     */
+    private class OrderedTopic(val event: TopicEvent)
+
+    /**
+     * 发送一个请求，订阅 [request] 类型的 observer 通过 [BusRequest.reply] 回复，回复只会交给 [callback]。
+     * 第一个回复、超时或者取消之后请求就被删除，之后的回复被忽略。
+     *
+     * @param timeoutMillis <= 0 表示不超时
+     * @return 调用 [Subscription.unsubscribe] 取消请求，取消后不会再回调
+     */
+    @AnyThread
+    fun <R> request(
+        request: BusRequest<R>,
+        timeoutMillis: Long = DEFAULT_REQUEST_TIMEOUT,
+        callback: ResponseCallback<R>
+    ): Subscription {
+        val pendingRequest = BusRequests.register(request, timeoutMillis, callback)
+        send(request, sticky = false, post = !EventLiveData.isMainThread())
+        return pendingRequest
+    }
+
+    /**
+     * [request] 的挂起版本，超时抛出 [java.util.concurrent.TimeoutException]。
+     * 只依赖 kotlin-stdlib，挂起不能被协程取消打断：取消后仍然挂起到回复或者超时，
+     * 所以 [timeoutMillis] 必须大于 0，保证请求和挂起的协程最终都会被释放
+     */
+    suspend fun <R> request(
+        request: BusRequest<R>,
+        timeoutMillis: Long = DEFAULT_REQUEST_TIMEOUT
+    ): R {
+        require(timeoutMillis > 0) {
+            "suspend request needs a positive timeout: $timeoutMillis"
+        }
+        return awaitResponse(request, timeoutMillis)
+    }
+
+    private suspend fun <R> awaitResponse(
+        request: BusRequest<R>,
+        timeoutMillis: Long
+    ): R = suspendCoroutine { continuation ->
+        request(request, timeoutMillis, object : ResponseCallback<R> {
+            override fun onResponse(response: R) {
+                continuation.resume(response)
+            }
+
+            override fun onError(error: Throwable) {
+                continuation.resumeWithException(error)
+            }
+        })
+    }
+
+    /**
+     * 为事件类型配置限流策略，传 null 取消，还没分发的事件会被丢弃
+     */
+    fun setRatePolicy(clazz: Class<*>, policy: RatePolicy?) {
+        setRateLimiter(clazz, policy)
+    }
+
+    /**
+     * 为基本数据类型事件的 eventKey 配置限流策略，传 null 取消，还没分发的事件会被丢弃
+     */
+    fun setRatePolicy(eventKey: String, policy: RatePolicy?) {
+        setRateLimiter(eventKey, policy)
+    }
+
+    private fun setRateLimiter(key: Any, policy: RatePolicy?) {
+        synchronized(interceptorLock) {
+            val limiters = HashMap(rateLimiters)
+            limiters.remove(key)?.cancel()
+            if (policy != null) {
+                limiters[key] = RateLimiter(policy) { event, sticky ->
+                    shareIfNeeded(event, sticky)
+                    traceAndSend(event, sticky, false)
+                }
+            }
+            rateLimiters = limiters
+        }
+    }
+
+    /**
+     * @return false: 被限流
+     */
+    private fun passRateLimit(event: Any, sticky: Boolean): Boolean {
+        val limiters = rateLimiters
+        if (limiters.isEmpty()) return true
+        val limiter = limiters[event.javaClass]
+            ?: (event as? PrimitiveEvent)?.let { limiters[it.eventKey] }
+            ?: return true
+        return limiter.offer(event, sticky)
+    }
+
+    /**
+     * 打开后所有通过 [send]/[sendAll]/[batch]/[sendTopic] 发送的事件（包括限流后延迟发出的和其他进程的事件）按发送顺序在主线程分发，
+     * 不同类型、不同线程之间也保持顺序，子线程发送的事件不会被合并。
+     * 代价是每个事件入队时有一次加锁，打开之前已经 post 的事件不受影响。
+     */
+    fun setOrderedDelivery(enabled: Boolean) {
+        synchronized(interceptorLock) {
+            sequencer = if (!enabled) null else sequencer ?: EventSequencer { event, sticky ->
+                if (event is OrderedTopic) {
+                    dispatchTopic(event.event)
+                } else {
+                    traceAndSend(event, sticky, false, null)
+                }
+            }
+        }
+    }
+
+    /**
+     * Observer 回调中发出的事件会排队到当前这一轮分发结束后再分发，由此再发出的事件层数加一，
+     * 超过 [depth] 的事件被丢弃并打印警告，用来打断事件之间的循环。默认 32
+     */
+    fun setMaxCascadeDepth(depth: Int) {
+        require(depth > 0) {
+            "depth must be positive: $depth"
+        }
+        EventLiveData.maxCascadeDepth = depth
+    }
+
+    /**
+     * 安装跨进程通道，之后通过 [setShared] 标记的事件会写入 [transport]，其他进程写入的事件会在这里分发。
+     * 每个进程只能安装一次，[transport] 由调用方负责关闭。
+     *
+     * 读线程只在标记为共享的类型有订阅时运行（基本数据类型要求标记了 eventKey），没有订阅时停止轮询，
+     * 这期间其他进程发送的事件不会收到，包括粘性事件。轮询的开销见 [SharedEventTransport]。
+     */
+    fun setSharedTransport(transport: SharedEventTransport) {
+        synchronized(interceptorLock) {
+            check(sharedTransport == null) {
+                "shared transport already installed"
+            }
+            sharedTransport = transport
+            updateSharedReader()
+        }
+    }
+
+    /**
+     * 共享的事件类型有订阅时才启动读线程，没有时停止轮询。调用方持有 [interceptorLock]
+     */
+    private fun updateSharedReader() {
+        val transport = sharedTransport ?: return
+        if (hasSharedObserver()) {
+            if (!transport.isReading) {
+                transport.start(remoteEventListener)
+            }
+        } else {
+            transport.stop()
+        }
+    }
+
+    private fun hasSharedObserver(): Boolean {
+        for (clazz in observedTypes.keys) {
+            if (clazz in PRIMITIVE_EVENT_TYPES.values) {
+                if (sharedKeys.isNotEmpty()) return true
+            } else if (sharedTypes[typeId(clazz)] == clazz) {
+                return true
+            }
+        }
+        return false
+    }
+
+    /**
+     * 标记事件类型是否跨进程发送和接收，所有进程都要标记才能解码。
+     * 事件通过 [EventCodecs] 编码
+     */
+    fun setShared(clazz: Class<*>, shared: Boolean = true) {
+        synchronized(interceptorLock) {
+            val types = HashMap(sharedTypes)
+            if (shared) {
+                val previous = types.put(typeId(clazz), clazz)
+                require(previous == null || previous == clazz) {
+                    "type id conflicts: ${clazz.name} and ${previous!!.name}"
+                }
+            } else if (clazz !in PRIMITIVE_EVENT_TYPES.values) {
+                types.remove(typeId(clazz))
+            }
+            sharedTypes = types
+            updateSharedReader()
+        }
+    }
+
+    /**
+     * 标记基本数据类型事件的 eventKey 是否跨进程发送和接收，接收方也要标记
+     */
+    fun setShared(eventKey: String, shared: Boolean = true) {
+        synchronized(interceptorLock) {
+            sharedKeys = if (shared) sharedKeys + eventKey else sharedKeys - eventKey
+            updateSharedReader()
+        }
+    }
+
+    private fun shareIfNeeded(event: Any, sticky: Boolean) {
+        val transport = sharedTransport ?: return
+        if (event is PrimitiveEvent) {
+            if (event.eventKey !in sharedKeys) return
+        } else if (sharedTypes[typeId(event.javaClass)] != event.javaClass) {
+            return
+        }
+        val buffer = encodeBuffer.get()!!
+        buffer.clear()
+        try {
+            buffer.putInt(typeId(event.javaClass))
+            EventCodecs.encode(event, buffer)
+        } catch (e: BufferOverflowException) {
+            throw IllegalArgumentException("event is too large to share: $event", e)
+        }
+        buffer.flip()
+        require(transport.send(buffer, if (sticky) FLAG_STICKY else 0)) {
+            "event is too large to share: $event"
+        }
+    }
+
+    /**
+     * 在读线程解码，每轮读到的事件一次性 post 到主线程。解码失败的记录打印警告后跳过，计入 [SharedEventTransport.droppedCount]
+     */
+    private inner class RemoteEventListener : SharedEventTransport.Listener {
+        private var events = arrayOfNulls<Any>(DEFAULT_BATCH_CAPACITY)
+        private var stickies = BooleanArray(DEFAULT_BATCH_CAPACITY)
+        private var count = 0
+
+        override fun onRecord(payload: ByteBuffer, flags: Int) {
+            if (count == events.size) {
+                events = events.copyOf(count * 2)
+                stickies = stickies.copyOf(count * 2)
+            }
+            // 本进程没有标记的类型
+            val clazz = sharedTypes[payload.int] ?: return
+            events[count] = EventCodecs.get(clazz).decode(payload)
+            stickies[count] = flags and FLAG_STICKY != 0
+            count++
+        }
+
+        override fun onRecordFailed(e: RuntimeException) {
+            Log.w(TAG, "drop shared event: failed to decode", e)
+        }
+
+        override fun onBatchEnd() {
+            postBatch(events, stickies, count, true)
+            events = arrayOfNulls(DEFAULT_BATCH_CAPACITY)
+            stickies = BooleanArray(DEFAULT_BATCH_CAPACITY)
+            count = 0
+        }
+    }
+
     /**
      * 清空所有的事件缓存
      */
@@ -141,7 +687,54 @@ class LiveEventBus private constructor() {
         sticky: Boolean = true,
         post: Boolean = false
     ) {
-        if (Looper.myLooper() != Looper.getMainLooper()) {
+        val interceptors = interceptors
+        val e = if (interceptors.isEmpty()) event else intercept(interceptors, event, sticky) ?: return
+        if (!passRateLimit(e, sticky)) return
+        shareIfNeeded(e, sticky)
+        traceAndSend(e, sticky, post)
+    }
+
+    private fun traceAndSend(
+        e: Any,
+        sticky: Boolean,
+        post: Boolean,
+        sequencer: EventSequencer? = this.sequencer
+    ) {
+        if (sequencer != null) {
+            sequencer.offer(e, sticky, post)
+            return
+        }
+        val tracer = BusTrace.tracer
+        if (tracer == null) {
+            sendInternal(e, sticky, post)
+            return
+        }
+        tracer.beginSection(BusTrace.label("send", e.javaClass))
+        try {
+            sendInternal(e, sticky, post)
+        } finally {
+            tracer.endSection()
+        }
+    }
+
+    private fun intercept(
+        interceptors: Array<EventInterceptor>,
+        event: Any,
+        sticky: Boolean
+    ): Any? {
+        var e = event
+        for (interceptor in interceptors) {
+            e = interceptor.intercept(e, sticky) ?: return null
+        }
+        return e
+    }
+
+    private fun sendInternal(
+        event: Any,
+        sticky: Boolean,
+        post: Boolean
+    ) {
+        if (!EventLiveData.isMainThread()) {
             synchronized(this) {
                 getSingleLiveData(event, sticky).postValue(event)
             }
@@ -158,16 +751,194 @@ class LiveEventBus private constructor() {
     private fun getSingleLiveData(
         event: Any,
         sticky: Boolean
-    ): EventLiveData<Any> {
-        val (liveData, stickyLiveData) = getLiveData(
-            event::class.java,
-            eventMap,
-            stickyEventMap
-        )
-        return if (sticky) {
-            stickyLiveData
+    ): EventLiveData<Any> = getChannel(event.javaClass, sticky, eventMap, stickyEventMap)
+
+    /**
+     * 获取 [clazz] 的工作队列，同一个类型返回同一个实例，见 [WorkChannel]
+     *
+     * @param capacity 只在第一次创建时生效
+     */
+    @Suppress("UNCHECKED_CAST")
+    fun <T> work(clazz: Class<T>, capacity: Int = DEFAULT_WORK_CAPACITY): WorkChannel<T> =
+        (workChannels[clazz] ?: WorkChannel<T>(capacity).let {
+            workChannels.putIfAbsent(clazz, it) ?: it
+        }) as WorkChannel<T>
+
+    /**
+     * 获取 [clazz] 的状态，同一个类型返回同一个实例，见 [StateChannel]
+     *
+     * @param initial 只在第一次创建时生效
+     */
+    @AnyThread
+    fun <T> state(clazz: Class<T>, initial: T): StateChannel<T> = getState(clazz, initial)
+
+    /**
+     * 获取 [key] 对应的状态，适合基本数据类型，见 [StateChannel]。
+     * 同一个 key 必须使用同一个类型 [T]：之后的调用忽略 [initial]，也不检查类型（泛型擦除后无法检查），
+     * 类型不一致时在读取值的地方抛出 [ClassCastException]
+     *
+     * @param initial 只在第一次创建时生效
+     */
+    @AnyThread
+    fun <T> state(key: String, initial: T): StateChannel<T> = getState(key, initial)
+
+    @Suppress("UNCHECKED_CAST")
+    private fun <T> getState(key: Any, initial: T): StateChannel<T> =
+        (stateChannels[key] ?: StateChannel(initial).let {
+            stateChannels.putIfAbsent(key, it) ?: it
+        }) as StateChannel<T>
+
+    /**
+     * [delayMillis] 之后发送 [event]，到期时和 [send] 一样经过拦截器等处理。
+     * 定时由时间轮在单独的线程管理，不会在主线程的 MessageQueue 中为每个事件插入一条消息，精度为 10ms
+     *
+     * @return 调用 [Subscription.unsubscribe] 取消，O(1)
+     */
+    @AnyThread
+    fun sendDelayed(event: Any, delayMillis: Long, sticky: Boolean = true): ScheduledEvent =
+        sendAt(event, SystemClock.uptimeMillis() + delayMillis, sticky)
+
+    /**
+     * 在 [uptimeMillis]（[SystemClock.uptimeMillis] 的时间）发送 [event]，见 [sendDelayed]
+     */
+    @AnyThread
+    fun sendAt(event: Any, uptimeMillis: Long, sticky: Boolean = true): ScheduledEvent =
+        timerWheel.schedule(event, sticky, uptimeMillis)
+
+    /**
+     * 一次发送多个事件：只加一次锁查找所有的 [EventLiveData]，子线程调用时只 post 一次到主线程，
+     * 然后按顺序逐个分发。和多次 [send] 不同，子线程发送的事件不会被 [EventLiveData.postValue] 合并。
+     *
+     * @param sticky 默认 true，发送粘性事件
+     * @param post 主线程调用时是否也 post 到下一个消息再分发
+     */
+    @AnyThread
+    fun sendAll(
+        events: Collection<Any>,
+        sticky: Boolean = true,
+        post: Boolean = false
+    ) {
+        val batch = Batch(events.size)
+        for (event in events) {
+            batch.send(event, sticky)
+        }
+        sendBatch(batch, post)
+    }
+
+    /**
+     * 收集 [block] 中发送的事件，结束后和 [sendAll] 一样一次发送
+     *
+     * ```
+     * LiveEventBus.instance.batch {
+     *     send(EventA())
+     *     send(EventB(), sticky = false)
+     * }
+     * ```
+     */
+    @AnyThread
+    inline fun batch(post: Boolean = false, block: Batch.() -> Unit) {
+        val batch = Batch(DEFAULT_BATCH_CAPACITY)
+        batch.block()
+        sendBatch(batch, post)
+    }
+
+    @PublishedApi
+    internal fun sendBatch(batch: Batch, post: Boolean) {
+        val size = batch.size
+        if (size == 0) return
+        val interceptors = interceptors
+        val events = arrayOfNulls<Any>(size)
+        val stickies = BooleanArray(size)
+        var count = 0
+        for (i in 0 until size) {
+            val sticky = batch.stickies[i]
+            events[count] = if (interceptors.isEmpty()) {
+                batch.events[i]
+            } else {
+                intercept(interceptors, batch.events[i], sticky) ?: continue
+            }
+            if (!passRateLimit(events[count]!!, sticky)) continue
+            shareIfNeeded(events[count]!!, sticky)
+            stickies[count] = sticky
+            count++
+        }
+        postBatch(events, stickies, count, post)
+    }
+
+    /**
+     * 只加一次锁查找所有的 [EventLiveData]，不在主线程或者 [post] 时只 post 一次
+     */
+    private fun postBatch(events: Array<Any?>, stickies: BooleanArray, count: Int, post: Boolean) {
+        val sequencer = sequencer
+        if (sequencer != null) {
+            sequencer.offerAll(events, stickies, count, post)
+            return
+        }
+        val channels = arrayOfNulls<EventLiveData<Any>>(count)
+        synchronized(eventMap) {
+            var lastClass: Class<*>? = null
+            var lastSticky = false
+            var lastChannel: EventLiveData<Any>? = null
+            for (i in 0 until count) {
+                val clazz = events[i]!!.javaClass
+                val sticky = stickies[i]
+                // 同类型的连续事件只查找一次
+                if (clazz != lastClass || sticky != lastSticky) {
+                    lastClass = clazz
+                    lastSticky = sticky
+                    lastChannel = getChannel(clazz, sticky, eventMap, stickyEventMap)
+                }
+                channels[i] = lastChannel
+            }
+        }
+        if (!post && EventLiveData.isMainThread()) {
+            dispatchBatch(events, channels, count)
         } else {
-            liveData
+            // 和 EventLiveData.postValue 一样，用 async section 连接子线程的发送和主线程的分发
+            val tracer = BusTrace.tracer
+            val cookie = if (tracer != null) BusTrace.nextCookie() else 0
+            tracer?.beginAsyncSection(POST_BATCH_TRACE_LABEL, cookie)
+            EventLiveData.mainHandler.post {
+                if (cookie != 0) {
+                    BusTrace.tracer?.endAsyncSection(POST_BATCH_TRACE_LABEL, cookie)
+                }
+                dispatchBatch(events, channels, count)
+            }
+        }
+    }
+
+    @MainThread
+    private fun dispatchBatch(events: Array<Any?>, channels: Array<EventLiveData<Any>?>, count: Int) {
+        val tracer = BusTrace.tracer
+        tracer?.beginSection("LiveEventBus#sendAll $count")
+        try {
+            for (i in 0 until count) {
+                channels[i]!!.value = events[i]
+            }
+        } finally {
+            tracer?.endSection()
+        }
+    }
+
+    /**
+     * [batch] 中收集的事件
+     */
+    class Batch @PublishedApi internal constructor(capacity: Int) {
+        internal val events = ArrayList<Any>(capacity)
+        internal var stickies = BooleanArray(capacity.coerceAtLeast(1))
+            private set
+        val size: Int
+            get() = events.size
+
+        /**
+         * @param sticky 默认 true，发送粘性事件
+         */
+        fun send(event: Any, sticky: Boolean = true) {
+            if (events.size == stickies.size) {
+                stickies = stickies.copyOf(stickies.size * 2)
+            }
+            stickies[events.size] = sticky
+            events.add(event)
         }
     }
 
@@ -180,6 +951,13 @@ class LiveEventBus private constructor() {
         private val liveDataMap: LruCache<Class<*>, EventLiveData<*>>,
         private val stickyEventMap: LruCache<Class<*>, EventLiveData<*>>
     ) {
+        /**
+         * 非粘性和粘性的通道，没有时创建
+         */
+        @VisibleForTesting
+        @Suppress("UNCHECKED_CAST")
+        internal fun channels() =
+            getLiveData(clazz, liveDataMap, stickyEventMap) as Pair<EventLiveData<T>, EventLiveData<T>>
 
         /**
          * @param owner
@@ -193,24 +971,217 @@ class LiveEventBus private constructor() {
             ownerKey: String? = null,
             forever: Boolean = false,
             observer: Observer<T>
-        ) {
+        ): Subscription {
+            val (liveData, stickyLiveData) = getLiveData(
+                clazz,
+                liveDataMap,
+                stickyEventMap
+            ) as Pair<EventLiveData<T>, EventLiveData<T>>
+            val k = ownerKey ?: EventLiveData.getKey(owner)
+            return if (forever) {
+                CompositeSubscription(
+                    liveData.observeForever(owner, k, observer),
+                    stickyLiveData.observeForever(owner, k, observer)
+                )
+            } else {
+                CompositeSubscription(
+                    liveData.observe(owner, k, observer),
+                    stickyLiveData.observe(owner, k, observer)
+                )
+            }
+        }
+
+        /**
+         * 按批接收事件，适合每次回调有固定开销的场景（例如一次数据库事务写入一批事件）。
+         * 攒够 [maxBatchSize] 个或者第一个事件之后过了 [maxLatencyMillis] 就回调一次，
+         * 回调的 List 会被复用，只在回调期间有效，需要保存时请复制。
+         */
+        @MainThread
+        fun observeBatched(
+            owner: LifecycleOwner,
+            maxBatchSize: Int,
+            maxLatencyMillis: Long,
+            ownerKey: String? = null,
+            forever: Boolean = false,
+            observer: Observer<in List<T>>
+        ): Subscription {
+            val batching = BatchingObserver(owner, maxBatchSize, maxLatencyMillis, observer)
+            batching.inner = observe(owner, ownerKey, forever, batching)
+            return batching
+        }
+
+        /**
+         * 创建一个还没有绑定的 [ReusableSubscription]，调用 [ReusableSubscription.bind] 之后才会收到回调，
+         * 用于 RecyclerView.ViewHolder 等频繁绑定和回收的场景，不需要为每个条目创建 [LifecycleOwner]
+         *
+         * @param parent 所有条目共用的 owner，销毁时自动取消
+         * @param forever true: 绑定期间一直收到回调；false: 仅在 [parent] 的生命周期 >= STARTED 时收到回调
+         */
+        @MainThread
+        @Suppress("UNCHECKED_CAST")
+        fun observeReusable(
+            parent: LifecycleOwner,
+            forever: Boolean = false,
+            priority: Int = 0,
+            observer: Observer<T>
+        ): ReusableSubscription {
+            val (liveData, stickyLiveData) = getLiveData(
+                clazz,
+                liveDataMap,
+                stickyEventMap
+            ) as Pair<EventLiveData<T>, EventLiveData<T>>
+            return ReusableSubscription(
+                EventLiveData.ReusableSlot(liveData, parent, observer, forever, priority),
+                EventLiveData.ReusableSlot(stickyLiveData, parent, observer, forever, priority)
+            )
+        }
+
+        /**
+         * 按优先级订阅，[priority] 越大越先收到回调，默认的 [observe] 为 0，同优先级按注册顺序。
+         * 回调中调用 [LiveEventBus.consume] 可以阻止后面的订阅收到当前事件。
+         */
+        @Suppress("UNCHECKED_CAST")
+        fun observe(
+            owner: LifecycleOwner,
+            priority: Int,
+            ownerKey: String? = null,
+            forever: Boolean = false,
+            observer: Observer<T>
+        ): Subscription {
             val (liveData, stickyLiveData) = getLiveData(
                 clazz,
                 liveDataMap,
                 stickyEventMap
             ) as Pair<EventLiveData<T>, EventLiveData<T>>
             val k = ownerKey ?: EventLiveData.getKey(owner)
-            if (forever) {
-                liveData.observeForever(owner, k, observer)
-                stickyLiveData.observeForever(owner, k, observer)
+            return if (forever) {
+                CompositeSubscription(
+                    liveData.observeForever(owner, k, priority, observer),
+                    stickyLiveData.observeForever(owner, k, priority, observer)
+                )
             } else {
-                liveData.observe(owner, k, observer)
-                stickyLiveData.observe(owner, k, observer)
+                CompositeSubscription(
+                    liveData.observe(owner, k, priority, observer),
+                    stickyLiveData.observe(owner, k, priority, observer)
+                )
             }
         }
+
+        /**
+         * [owner] 的生命周期 >= [minState] 时才会收到回调，可以是 CREATED、STARTED 或者 RESUMED，
+         * 默认的 [observe] 为 STARTED。非活跃期间不参与分发，活跃时补发一次最后一个事件
+         */
+        @Suppress("UNCHECKED_CAST")
+        fun observe(
+            owner: LifecycleOwner,
+            minState: Lifecycle.State,
+            ownerKey: String? = null,
+            priority: Int = 0,
+            observer: Observer<T>
+        ): Subscription {
+            val (liveData, stickyLiveData) = getLiveData(
+                clazz,
+                liveDataMap,
+                stickyEventMap
+            ) as Pair<EventLiveData<T>, EventLiveData<T>>
+            val k = ownerKey ?: EventLiveData.getKey(owner)
+            return CompositeSubscription(
+                liveData.observe(owner, k, priority, minState, observer),
+                stickyLiveData.observe(owner, k, priority, minState, observer)
+            )
+        }
+
+        /**
+         * [owner] 低于 STARTED 时按 [backlog] 积压事件，回到 STARTED 时按顺序补发，适合不能漏掉中间事件的订阅
+         */
+        @Suppress("UNCHECKED_CAST")
+        fun observe(
+            owner: LifecycleOwner,
+            backlog: BacklogPolicy,
+            ownerKey: String? = null,
+            priority: Int = 0,
+            observer: Observer<T>
+        ): Subscription {
+            val (liveData, stickyLiveData) = getLiveData(
+                clazz,
+                liveDataMap,
+                stickyEventMap
+            ) as Pair<EventLiveData<T>, EventLiveData<T>>
+            val k = ownerKey ?: EventLiveData.getKey(owner)
+            // 两个通道共用一个队列，补发时保持发送顺序
+            val queue = EventBacklog(backlog)
+            return CompositeSubscription(
+                liveData.observe(owner, k, priority, queue, observer),
+                stickyLiveData.observe(owner, k, priority, queue, observer)
+            )
+        }
+
+        /**
+         * 只接收 [selector] 提取的 key 等于 [expected] 的事件，例如只接收当前用户的事件：
+         * `observe(owner, USER_ID_SELECTOR, me) { }`。
+         * 过滤由分发方按 key 索引完成，不匹配的 observer 不会被回调。
+         * 没有优先级，在所有普通订阅之后回调，也不参与同一个 ownerKey 只回调一次的规则，见 [EventLiveData.observeFiltered]。
+         *
+         * @param selector 请复用同一个实例，见 [KeySelector]
+         */
+        @Suppress("UNCHECKED_CAST")
+        fun observe(
+            owner: LifecycleOwner,
+            selector: KeySelector<T>,
+            expected: Any?,
+            ownerKey: String? = null,
+            forever: Boolean = false,
+            observer: Observer<T>
+        ): Subscription {
+            val (liveData, stickyLiveData) = getLiveData(
+                clazz,
+                liveDataMap,
+                stickyEventMap
+            ) as Pair<EventLiveData<T>, EventLiveData<T>>
+            val k = ownerKey ?: EventLiveData.getKey(owner)
+            return CompositeSubscription(
+                liveData.observeFiltered(owner, selector, expected, k, forever, observer),
+                stickyLiveData.observeFiltered(owner, selector, expected, k, forever, observer)
+            )
+        }
+
+        /**
+         * 取消 [owner] 对该事件的所有订阅，耗时只和 [owner] 的订阅数量有关
+         */
+        @MainThread
+        @Suppress("UNCHECKED_CAST")
+        fun removeObservers(owner: LifecycleOwner) {
+            val (liveData, stickyLiveData) = getLiveData(
+                clazz,
+                liveDataMap,
+                stickyEventMap
+            ) as Pair<EventLiveData<T>, EventLiveData<T>>
+            liveData.removeObservers(owner)
+            stickyLiveData.removeObservers(owner)
+        }
     }
 
 
+    class TopicBus(
+        private val filter: String,
+        private val router: TopicRouter
+    ) {
+
+        /**
+         * @param owner [owner] 销毁时自动取消订阅
+         * @param forever 是否一直观察 true:直到[owner]销毁都会收到回调，
+         * false:仅在 [owner] 的生命周期 >= [Lifecycle.Event.ON_START] 时才会收到回调
+         */
+        @MainThread
+        fun observe(
+            owner: LifecycleOwner,
+            forever: Boolean = false,
+            observer: Observer<TopicEvent>
+        ): TopicRouter.TopicSubscription {
+            return router.subscribe(filter, owner, forever, observer)
+        }
+    }
+
     class PrimitiveBus(
         @RestrictTo(RestrictTo.Scope.LIBRARY)
         val eventKey: String,
@@ -223,8 +1194,8 @@ class LiveEventBus private constructor() {
             ownerKey: String? = null,
             forever: Boolean = false,
             crossinline block: (Int) -> Unit
-        ) {
-            this.observeInt(owner, ownerKey, eventKey, forever = forever) {
+        ): Subscription {
+            return this.observeInt(owner, ownerKey, eventKey, forever = forever) {
                 if (it.eventKey == eventKey) {
                     block(it.intValue)
                 }
@@ -236,8 +1207,8 @@ class LiveEventBus private constructor() {
             ownerKey: String? = null,
             forever: Boolean = false,
             crossinline block: (Long) -> Unit
-        ) {
-            this.observeLong(owner, ownerKey, eventKey, forever = forever) {
+        ): Subscription {
+            return this.observeLong(owner, ownerKey, eventKey, forever = forever) {
                 if (it.eventKey == eventKey) {
                     block(it.longValue)
                 }
@@ -249,8 +1220,8 @@ class LiveEventBus private constructor() {
             ownerKey: String? = null,
             forever: Boolean = false,
             crossinline block: (Double) -> Unit
-        ) {
-            this.observeDouble(owner, ownerKey, eventKey, forever = forever) {
+        ): Subscription {
+            return this.observeDouble(owner, ownerKey, eventKey, forever = forever) {
                 if (it.eventKey == eventKey) {
                     block(it.doubleValue)
                 }
@@ -262,8 +1233,8 @@ class LiveEventBus private constructor() {
             ownerKey: String? = null,
             forever: Boolean = false,
             crossinline block: (Float) -> Unit
-        ) {
-            this.observeFloat(owner, ownerKey, eventKey, forever = forever) {
+        ): Subscription {
+            return this.observeFloat(owner, ownerKey, eventKey, forever = forever) {
                 if (it.eventKey == eventKey) {
                     block(it.floatValue)
                 }
@@ -275,8 +1246,8 @@ class LiveEventBus private constructor() {
             ownerKey: String? = null,
             forever: Boolean = false,
             crossinline block: (Boolean) -> Unit
-        ) {
-            this.observeBoolean(owner, ownerKey, eventKey, forever = forever) {
+        ): Subscription {
+            return this.observeBoolean(owner, ownerKey, eventKey, forever = forever) {
                 if (it.eventKey == eventKey) {
                     block(it.booleanValue)
                 }
@@ -288,8 +1259,8 @@ class LiveEventBus private constructor() {
             ownerKey: String? = null,
             forever: Boolean = false,
             crossinline block: (Char) -> Unit
-        ) {
-            this.observeChar(owner, ownerKey, eventKey, forever = forever) {
+        ): Subscription {
+            return this.observeChar(owner, ownerKey, eventKey, forever = forever) {
                 if (it.eventKey == eventKey) {
                     block(it.charValue)
                 }
@@ -301,8 +1272,8 @@ class LiveEventBus private constructor() {
             ownerKey: String? = null,
             forever: Boolean = false,
             crossinline block: (String) -> Unit
-        ) {
-            this.observeString(owner, ownerKey, eventKey, forever = forever) {
+        ): Subscription {
+            return this.observeString(owner, ownerKey, eventKey, forever = forever) {
                 if (it.eventKey == eventKey) {
                     block(it.stringValue)
                 }
@@ -317,7 +1288,7 @@ class LiveEventBus private constructor() {
             eventKey: String,
             forever: Boolean,
             observer: Observer<in PrimitiveDoubleEvent>,
-        ) {
+        ): Subscription {
             val (liveData, stickyLiveData) =
                 getLiveData(
                     PrimitiveDoubleEvent::class.java,
@@ -325,12 +1296,16 @@ class LiveEventBus private constructor() {
                     stickyEventMap
                 ) as Pair<EventLiveData<PrimitiveDoubleEvent>, EventLiveData<PrimitiveDoubleEvent>>
             val k = "${(ownerKey ?: EventLiveData.getKey(owner))}_${eventKey}"
-            if (forever) {
-                liveData.observeForever(owner, k, observer)
-                stickyLiveData.observeForever(owner, k, observer)
+            return if (forever) {
+                CompositeSubscription(
+                    liveData.observeForever(owner, k, observer),
+                    stickyLiveData.observeForever(owner, k, observer)
+                )
             } else {
-                liveData.observe(owner, k, observer)
-                stickyLiveData.observe(owner, k, observer)
+                CompositeSubscription(
+                    liveData.observe(owner, k, observer),
+                    stickyLiveData.observe(owner, k, observer)
+                )
             }
         }
 
@@ -342,7 +1317,7 @@ class LiveEventBus private constructor() {
             eventKey: String,
             forever: Boolean,
             observer: Observer<in PrimitiveFloatEvent>,
-        ) {
+        ): Subscription {
             val (liveData, stickyLiveData) =
                 getLiveData(
                     PrimitiveFloatEvent::class.java,
@@ -350,12 +1325,16 @@ class LiveEventBus private constructor() {
                     stickyEventMap
                 ) as Pair<EventLiveData<PrimitiveFloatEvent>, EventLiveData<PrimitiveFloatEvent>>
             val k = "${(ownerKey ?: EventLiveData.getKey(owner))}_${eventKey}"
-            if (forever) {
-                liveData.observeForever(owner, k, observer)
-                stickyLiveData.observeForever(owner, k, observer)
+            return if (forever) {
+                CompositeSubscription(
+                    liveData.observeForever(owner, k, observer),
+                    stickyLiveData.observeForever(owner, k, observer)
+                )
             } else {
-                liveData.observe(owner, k, observer)
-                stickyLiveData.observe(owner, k, observer)
+                CompositeSubscription(
+                    liveData.observe(owner, k, observer),
+                    stickyLiveData.observe(owner, k, observer)
+                )
             }
         }
 
@@ -367,7 +1346,7 @@ class LiveEventBus private constructor() {
             eventKey: String,
             forever: Boolean,
             observer: Observer<in PrimitiveLongEvent>,
-        ) {
+        ): Subscription {
             val (liveData, stickyLiveData) =
                 getLiveData(
                     PrimitiveLongEvent::class.java,
@@ -375,12 +1354,16 @@ class LiveEventBus private constructor() {
                     stickyEventMap
                 ) as Pair<EventLiveData<PrimitiveLongEvent>, EventLiveData<PrimitiveLongEvent>>
             val k = "${(ownerKey ?: EventLiveData.getKey(owner))}_${eventKey}"
-            if (forever) {
-                liveData.observeForever(owner, k, observer)
-                stickyLiveData.observeForever(owner, k, observer)
+            return if (forever) {
+                CompositeSubscription(
+                    liveData.observeForever(owner, k, observer),
+                    stickyLiveData.observeForever(owner, k, observer)
+                )
             } else {
-                liveData.observe(owner, k, observer)
-                stickyLiveData.observe(owner, k, observer)
+                CompositeSubscription(
+                    liveData.observe(owner, k, observer),
+                    stickyLiveData.observe(owner, k, observer)
+                )
             }
         }
 
@@ -392,7 +1375,7 @@ class LiveEventBus private constructor() {
             eventKey: String,
             forever: Boolean,
             observer: Observer<in PrimitiveIntEvent>,
-        ) {
+        ): Subscription {
             val (liveData, stickyLiveData) =
                 getLiveData(
                     PrimitiveIntEvent::class.java,
@@ -400,12 +1383,16 @@ class LiveEventBus private constructor() {
                     stickyEventMap
                 ) as Pair<EventLiveData<PrimitiveIntEvent>, EventLiveData<PrimitiveIntEvent>>
             val k = "${(ownerKey ?: EventLiveData.getKey(owner))}_${eventKey}"
-            if (forever) {
-                liveData.observeForever(owner, k, observer)
-                stickyLiveData.observeForever(owner, k, observer)
+            return if (forever) {
+                CompositeSubscription(
+                    liveData.observeForever(owner, k, observer),
+                    stickyLiveData.observeForever(owner, k, observer)
+                )
             } else {
-                liveData.observe(owner, k, observer)
-                stickyLiveData.observe(owner, k, observer)
+                CompositeSubscription(
+                    liveData.observe(owner, k, observer),
+                    stickyLiveData.observe(owner, k, observer)
+                )
             }
         }
 
@@ -417,7 +1404,7 @@ class LiveEventBus private constructor() {
             eventKey: String,
             forever: Boolean,
             observer: Observer<in PrimitiveBooleanEvent>,
-        ) {
+        ): Subscription {
             val (liveData, stickyLiveData) =
                 getLiveData(
                     PrimitiveBooleanEvent::class.java,
@@ -425,12 +1412,16 @@ class LiveEventBus private constructor() {
                     stickyEventMap
                 ) as Pair<EventLiveData<PrimitiveBooleanEvent>, EventLiveData<PrimitiveBooleanEvent>>
             val k = "${(ownerKey ?: EventLiveData.getKey(owner))}_${eventKey}"
-            if (forever) {
-                liveData.observeForever(owner, k, observer)
-                stickyLiveData.observeForever(owner, k, observer)
+            return if (forever) {
+                CompositeSubscription(
+                    liveData.observeForever(owner, k, observer),
+                    stickyLiveData.observeForever(owner, k, observer)
+                )
             } else {
-                liveData.observe(owner, k, observer)
-                stickyLiveData.observe(owner, k, observer)
+                CompositeSubscription(
+                    liveData.observe(owner, k, observer),
+                    stickyLiveData.observe(owner, k, observer)
+                )
             }
         }
 
@@ -442,7 +1433,7 @@ class LiveEventBus private constructor() {
             eventKey: String,
             forever: Boolean,
             observer: Observer<in PrimitiveCharEvent>,
-        ) {
+        ): Subscription {
             val (liveData, stickyLiveData) =
                 getLiveData(
                     PrimitiveCharEvent::class.java,
@@ -450,12 +1441,16 @@ class LiveEventBus private constructor() {
                     stickyEventMap
                 ) as Pair<EventLiveData<PrimitiveCharEvent>, EventLiveData<PrimitiveCharEvent>>
             val k = "${(ownerKey ?: EventLiveData.getKey(owner))}_${eventKey}"
-            if (forever) {
-                liveData.observeForever(owner, k, observer)
-                stickyLiveData.observeForever(owner, k, observer)
+            return if (forever) {
+                CompositeSubscription(
+                    liveData.observeForever(owner, k, observer),
+                    stickyLiveData.observeForever(owner, k, observer)
+                )
             } else {
-                liveData.observe(owner, k, observer)
-                stickyLiveData.observe(owner, k, observer)
+                CompositeSubscription(
+                    liveData.observe(owner, k, observer),
+                    stickyLiveData.observe(owner, k, observer)
+                )
             }
         }
 
@@ -467,7 +1462,7 @@ class LiveEventBus private constructor() {
             eventKey: String,
             forever: Boolean,
             observer: Observer<in PrimitiveStringEvent>,
-        ) {
+        ): Subscription {
             val (liveData, stickyLiveData) =
                 getLiveData(
                     PrimitiveStringEvent::class.java,
@@ -475,45 +1470,57 @@ class LiveEventBus private constructor() {
                     stickyEventMap
                 ) as Pair<EventLiveData<PrimitiveStringEvent>, EventLiveData<PrimitiveStringEvent>>
             val k = "${(ownerKey ?: EventLiveData.getKey(owner))}_${eventKey}"
-            if (forever) {
-                liveData.observeForever(owner, k, observer)
-                stickyLiveData.observeForever(owner, k, observer)
+            return if (forever) {
+                CompositeSubscription(
+                    liveData.observeForever(owner, k, observer),
+                    stickyLiveData.observeForever(owner, k, observer)
+                )
             } else {
-                liveData.observe(owner, k, observer)
-                stickyLiveData.observe(owner, k, observer)
+                CompositeSubscription(
+                    liveData.observe(owner, k, observer),
+                    stickyLiveData.observe(owner, k, observer)
+                )
             }
         }
     }
 
+    /**
+     * 基本数据类型事件
+     */
+    @RestrictTo(RestrictTo.Scope.LIBRARY)
+    interface PrimitiveEvent {
+        val eventKey: String
+    }
+
     /**
      * 基本数据类型事件
      */
     @RestrictTo(RestrictTo.Scope.LIBRARY)
     data class PrimitiveStringEvent(
-        val eventKey: String = "",
+        override val eventKey: String = "",
         val sticky: Boolean = false,
         val stringValue: String = ""
-    )
+    ) : PrimitiveEvent
 
     /**
      * 基本数据类型事件
      */
     @RestrictTo(RestrictTo.Scope.LIBRARY)
     data class PrimitiveIntEvent(
-        val eventKey: String = "",
+        override val eventKey: String = "",
         val sticky: Boolean = false,
         val intValue: Int = 0
-    )
+    ) : PrimitiveEvent
 
     /**
      * 基本数据类型事件
      */
     @RestrictTo(RestrictTo.Scope.LIBRARY)
     data class PrimitiveLongEvent(
-        val eventKey: String = "",
+        override val eventKey: String = "",
         val sticky: Boolean = false,
         val longValue: Long = 0L
-    )
+    ) : PrimitiveEvent
 
 
     /**
@@ -521,30 +1528,30 @@ class LiveEventBus private constructor() {
      */
     @RestrictTo(RestrictTo.Scope.LIBRARY)
     data class PrimitiveFloatEvent(
-        val eventKey: String = "",
+        override val eventKey: String = "",
         val sticky: Boolean = false,
         val floatValue: Float = 0F
-    )
+    ) : PrimitiveEvent
 
     /**
      * 基本数据类型事件
      */
     @RestrictTo(RestrictTo.Scope.LIBRARY)
     data class PrimitiveDoubleEvent(
-        val eventKey: String = "",
+        override val eventKey: String = "",
         val sticky: Boolean = false,
         val doubleValue: Double = 0.0
-    )
+    ) : PrimitiveEvent
 
     /**
      * 基本数据类型事件
      */
     @RestrictTo(RestrictTo.Scope.LIBRARY)
     data class PrimitiveBooleanEvent(
-        val eventKey: String = "",
+        override val eventKey: String = "",
         val sticky: Boolean = false,
         val booleanValue: Boolean = false
-    )
+    ) : PrimitiveEvent
 
 
     /**
@@ -552,8 +1559,8 @@ class LiveEventBus private constructor() {
      */
     @RestrictTo(RestrictTo.Scope.LIBRARY)
     data class PrimitiveCharEvent(
-        val eventKey: String = "",
+        override val eventKey: String = "",
         val sticky: Boolean = false,
         val charValue: Char = ' '
-    )
+    ) : PrimitiveEvent
 }
@@ -0,0 +1,50 @@
+package com.lwjlol.liveeventbus
+
+import android.os.Looper
+import android.os.SystemClock
+import android.view.Choreographer
+
+/**
+ * 主线程的任务调度和时钟，默认基于 [EventLiveData.mainHandler]、[Choreographer] 和 [SystemClock.uptimeMillis]，
+ * 单元测试中可以替换成手动推进的实现
+ */
+internal interface MainScheduler {
+    fun isMainThread(): Boolean
+
+    fun post(task: Runnable)
+
+    fun postDelayed(task: Runnable, delayMillis: Long)
+
+    fun remove(task: Runnable)
+
+    fun uptimeMillis(): Long
+
+    /**
+     * 下一帧开始时执行 [task]，只能在主线程调用
+     */
+    fun postFrame(task: Runnable) {
+        post(task)
+    }
+
+    companion object Default : MainScheduler {
+        override fun isMainThread() = Looper.myLooper() == Looper.getMainLooper()
+
+        override fun post(task: Runnable) {
+            EventLiveData.mainHandler.post(task)
+        }
+
+        override fun postDelayed(task: Runnable, delayMillis: Long) {
+            EventLiveData.mainHandler.postDelayed(task, delayMillis)
+        }
+
+        override fun remove(task: Runnable) {
+            EventLiveData.mainHandler.removeCallbacks(task)
+        }
+
+        override fun uptimeMillis() = SystemClock.uptimeMillis()
+
+        override fun postFrame(task: Runnable) {
+            Choreographer.getInstance().postFrameCallback { task.run() }
+        }
+    }
+}
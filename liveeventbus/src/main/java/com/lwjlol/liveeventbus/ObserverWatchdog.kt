@@ -0,0 +1,176 @@
+package com.lwjlol.liveeventbus
+
+import android.os.SystemClock
+import androidx.annotation.MainThread
+import androidx.collection.ArrayMap
+
+/**
+ * 慢回调检测：统计 [EventLiveData] 分发时每个 Observer 在主线程上的耗时，超过 [thresholdMillis] 时通过 [Listener] 上报。
+ *
+ * 通过 [LiveEventBus.setObserverWatchdog] 安装，默认不安装，未安装时分发路径只多一次 null 判断。
+ *
+ * @param thresholdMillis 单次回调的耗时阈值
+ * @param sampleInterval 每 N 次回调计时一次，1 表示全部计时；线上建议配合 [aggregate] 使用 100 左右的采样间隔
+ * @param aggregate true: 不逐条上报，按 (事件类型, ownerKey, observer 类型) 聚合后每隔 [reportIntervalMillis] 通过 [Listener.onReport] 上报一次
+ * @param reportIntervalMillis 聚合模式下的上报间隔
+ */
+class ObserverWatchdog @JvmOverloads constructor(
+    val thresholdMillis: Long = 16,
+    val sampleInterval: Int = 1,
+    val aggregate: Boolean = false,
+    val reportIntervalMillis: Long = 60_000,
+    private val listener: Listener
+) {
+    private var callbackCount = 0
+    private var lastReportTime = SystemClock.uptimeMillis()
+    private val records = ArrayMap<RecordKey, Record>(4)
+
+    /**
+     * 查找用的 key，命中时不分配对象
+     */
+    private val probe = RecordKey(null, "", Any::class.java)
+
+    init {
+        require(sampleInterval > 0) {
+            "sampleInterval must be > 0"
+        }
+    }
+
+    /**
+     * 本次回调是否需要计时
+     */
+    @MainThread
+    internal fun shouldSample(): Boolean {
+        if (sampleInterval == 1) return true
+        if (++callbackCount < sampleInterval) return false
+        callbackCount = 0
+        return true
+    }
+
+    @MainThread
+    internal fun onCallback(
+        eventType: Class<*>?,
+        ownerKey: String,
+        observer: Any,
+        costNanos: Long
+    ) {
+        val costMillis = costNanos / 1_000_000
+        if (!aggregate) {
+            if (costMillis >= thresholdMillis) {
+                listener.onSlowObserver(
+                    Record(eventType, ownerKey, observer.javaClass).also {
+                        it.count = 1
+                        it.slowCount = 1
+                        it.totalNanos = costNanos
+                        it.maxNanos = costNanos
+                    }
+                )
+            }
+            return
+        }
+        val observerClass = observer.javaClass
+        probe.eventType = eventType
+        probe.ownerKey = ownerKey
+        probe.observerClass = observerClass
+        val record = records[probe] ?: Record(eventType, ownerKey, observerClass).also {
+            records[RecordKey(eventType, ownerKey, observerClass)] = it
+        }
+        record.count++
+        record.totalNanos += costNanos
+        if (costNanos > record.maxNanos) {
+            record.maxNanos = costNanos
+        }
+        if (costMillis >= thresholdMillis) {
+            record.slowCount++
+        }
+        val now = SystemClock.uptimeMillis()
+        if (now - lastReportTime >= reportIntervalMillis) {
+            flush(now)
+        }
+    }
+
+    /**
+     * 聚合模式下立即上报当前的统计，并清空
+     */
+    @MainThread
+    fun flush() {
+        flush(SystemClock.uptimeMillis())
+    }
+
+    private fun flush(now: Long) {
+        lastReportTime = now
+        if (records.isEmpty) return
+        val report = ArrayList<Record>(records.size)
+        for (i in 0 until records.size) {
+            val record = records.valueAt(i)
+            if (record.slowCount > 0) {
+                report.add(record)
+            }
+        }
+        records.clear()
+        if (report.isNotEmpty()) {
+            listener.onReport(report)
+        }
+    }
+
+    /**
+     * @param eventType 事件类型，直接使用 [EventLiveData] 时可能为 null
+     * @param observerClass 业务传入的 Observer 的类型
+     */
+    class Record(
+        val eventType: Class<*>?,
+        val ownerKey: String,
+        val observerClass: Class<*>
+    ) {
+        /**
+         * 采样到的回调次数
+         */
+        var count = 0
+            internal set
+
+        /**
+         * 超过阈值的回调次数
+         */
+        var slowCount = 0
+            internal set
+
+        var totalNanos = 0L
+            internal set
+
+        var maxNanos = 0L
+            internal set
+
+        override fun toString(): String {
+            return "Record(eventType=${eventType?.name}, ownerKey=$ownerKey, observer=${observerClass.name}, " +
+                    "count=$count, slowCount=$slowCount, avg=${if (count == 0) 0 else totalNanos / count / 1000}us, " +
+                    "max=${maxNanos / 1000}us)"
+        }
+    }
+
+    private class RecordKey(
+        var eventType: Class<*>?,
+        var ownerKey: String,
+        var observerClass: Class<*>
+    ) {
+        override fun equals(other: Any?): Boolean {
+            return other is RecordKey && other.eventType == eventType && other.ownerKey == ownerKey &&
+                    other.observerClass == observerClass
+        }
+
+        override fun hashCode(): Int {
+            return (eventType.hashCode() * 31 + ownerKey.hashCode()) * 31 + observerClass.hashCode()
+        }
+    }
+
+    interface Listener {
+        /**
+         * 非聚合模式下，单次回调超过阈值
+         */
+        fun onSlowObserver(record: Record)
+
+        /**
+         * 聚合模式下定期上报，只包含出现过慢回调的 observer
+         */
+        fun onReport(records: List<Record>) {}
+    }
+}
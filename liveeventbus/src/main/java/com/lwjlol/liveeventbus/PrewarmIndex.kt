@@ -0,0 +1,19 @@
+package com.lwjlol.liveeventbus
+
+import androidx.lifecycle.LifecycleOwner
+
+/**
+ * 启动时需要预热的事件类型和订阅方，见 [LiveEventBus.prewarm]。可以手写，也可以由构建脚本生成
+ */
+interface PrewarmIndex {
+    /**
+     * 首屏会发送或者订阅的事件类型
+     */
+    val eventTypes: Collection<Class<*>>
+
+    /**
+     * 首屏订阅事件的 Activity/Fragment 等，预先计算默认的 ownerKey
+     */
+    val ownerTypes: Collection<Class<out LifecycleOwner>>
+        get() = emptyList()
+}
@@ -0,0 +1,122 @@
+package com.lwjlol.liveeventbus
+
+/**
+ * 事件通道的限流策略，通过 [LiveEventBus.setRatePolicy] 按事件类型或基本数据类型事件的 eventKey 配置。
+ *
+ * 被限流的事件在调用 send 的线程就被丢弃或暂存，不会访问订阅表，也不会 post 到主线程。
+ * 粘性和非粘性事件分别限流。
+ */
+sealed class RatePolicy {
+    /**
+     * 每 [intervalMillis] 最多分发一次，窗口内的事件只保留最后一个，在窗口结束时分发
+     */
+    class ThrottleLatest(val intervalMillis: Long) : RatePolicy()
+
+    /**
+     * 在 [timeoutMillis] 内没有新事件时才分发最后一个事件
+     */
+    class Debounce(val timeoutMillis: Long) : RatePolicy()
+
+    /**
+     * 和同一个通道（粘性或者非粘性）上一个分发的事件 equals 时跳过
+     */
+    object DistinctUntilChanged : RatePolicy()
+}
+
+/**
+ * 一个事件类型或者 eventKey 的限流状态，[offer] 可以在任意线程调用，延迟分发的事件通过 [emit] 在主线程发出。
+ * 粘性和非粘性是两个通道，状态分开记录，一个通道的事件不会替换或者推迟另一个通道的事件
+ */
+internal class RateLimiter(
+    private val policy: RatePolicy,
+    private val scheduler: MainScheduler = MainScheduler,
+    private val emit: (event: Any, sticky: Boolean) -> Unit
+) {
+    private val stickyChannel = Channel(true)
+    private val nonStickyChannel = Channel(false)
+
+    /**
+     * @return true: 立即发送；false: 丢弃或者暂存到之后发送
+     */
+    fun offer(event: Any, sticky: Boolean): Boolean =
+        (if (sticky) stickyChannel else nonStickyChannel).offer(event)
+
+    /**
+     * 取消还没有分发的事件
+     */
+    fun cancel() {
+        stickyChannel.cancel()
+        nonStickyChannel.cancel()
+    }
+
+    private inner class Channel(private val sticky: Boolean) : Runnable {
+        private var last: Any? = NONE
+        private var lastEmitTime = 0L
+        private var deadline = 0L
+        private var scheduled = false
+        private var pending: Any? = null
+
+        @Synchronized
+        fun offer(event: Any): Boolean {
+            when (policy) {
+                is RatePolicy.DistinctUntilChanged -> {
+                    if (event == last) return false
+                    last = event
+                    return true
+                }
+                is RatePolicy.ThrottleLatest -> {
+                    val now = scheduler.uptimeMillis()
+                    if (!scheduled && now - lastEmitTime >= policy.intervalMillis) {
+                        lastEmitTime = now
+                        return true
+                    }
+                    pending = event
+                    if (!scheduled) {
+                        scheduled = true
+                        scheduler.postDelayed(this, lastEmitTime + policy.intervalMillis - now)
+                    }
+                    return false
+                }
+                is RatePolicy.Debounce -> {
+                    pending = event
+                    deadline = scheduler.uptimeMillis() + policy.timeoutMillis
+                    // 已经有延迟任务时只推后 deadline，到期时再重新计算
+                    if (!scheduled) {
+                        scheduled = true
+                        scheduler.postDelayed(this, policy.timeoutMillis)
+                    }
+                    return false
+                }
+            }
+        }
+
+        override fun run() {
+            val event: Any
+            synchronized(this) {
+                val now = scheduler.uptimeMillis()
+                if (policy is RatePolicy.Debounce && now < deadline) {
+                    scheduler.postDelayed(this, deadline - now)
+                    return
+                }
+                scheduled = false
+                lastEmitTime = now
+                event = pending ?: return
+                pending = null
+            }
+            emit(event, sticky)
+        }
+
+        @Synchronized
+        fun cancel() {
+            if (scheduled) {
+                scheduler.remove(this)
+                scheduled = false
+            }
+            pending = null
+        }
+    }
+
+    private companion object {
+        val NONE = Any()
+    }
+}
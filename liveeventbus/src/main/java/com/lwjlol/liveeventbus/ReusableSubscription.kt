@@ -0,0 +1,48 @@
+package com.lwjlol.liveeventbus
+
+import androidx.annotation.AnyThread
+import androidx.annotation.MainThread
+
+/**
+ * 可以重复绑定的订阅，通过 [LiveEventBus.Bus.observeReusable] 创建，适合 RecyclerView.ViewHolder：
+ * 创建 ViewHolder 时创建一次，onBindViewHolder 时 [bind] 到条目的 key，onViewRecycled 时 [unsubscribe]。
+ *
+ * 订阅的生命周期跟随创建时的 parent（例如 Fragment），同一个 parent 下的所有条目共用一个生命周期回调；
+ * [unsubscribe] 只清除绑定标记，订阅留在订阅表中并保持分发顺序；再次 [bind] 只修改 ownerKey 和标记，
+ * 不需要重新注册也不会创建新的对象。重新绑定同一个 key 时只补发解绑期间的事件。
+ * parent 销毁后绑定不再生效。[bind] 只能在主线程调用，[unsubscribe] 可以在任意线程调用。
+ */
+class ReusableSubscription internal constructor(
+    private val first: EventLiveData.ReusableSlot<*>,
+    private val second: EventLiveData.ReusableSlot<*>
+) : Subscription {
+    /**
+     * 当前绑定的 key，没有绑定时为 null
+     */
+    @Volatile
+    var key: String? = null
+        private set
+
+    /**
+     * @param key 同 [LiveEventBus.Bus.observe] 的 ownerKey，每个 key 只会收到一次粘性事件
+     */
+    @MainThread
+    fun bind(key: String) {
+        check(EventLiveData.isMainThread()) {
+            "ReusableSubscription must be bound on the main thread"
+        }
+        this.key = key
+        first.bind(key)
+        second.bind(key)
+    }
+
+    /**
+     * 解绑，之后可以再次 [bind]。子线程调用时排队到主线程执行，主线程之后的 [bind] 会先执行排队的解绑
+     */
+    @AnyThread
+    override fun unsubscribe() {
+        key = null
+        first.unsubscribe()
+        second.unsubscribe()
+    }
+}
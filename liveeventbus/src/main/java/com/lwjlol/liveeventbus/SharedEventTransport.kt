@@ -0,0 +1,327 @@
+package com.lwjlol.liveeventbus
+
+import java.io.Closeable
+import java.io.File
+import java.io.RandomAccessFile
+import java.nio.ByteBuffer
+import java.nio.MappedByteBuffer
+import java.nio.channels.ClosedChannelException
+import java.nio.channels.FileChannel
+import java.util.Random
+
+/**
+ * 跨进程的事件通道：多个进程映射同一个文件作为环形缓冲区，发送方写入一条记录并发布写入位置，
+ * 其他进程的读线程轮询写入位置读出新的记录，每个事件不需要一次 Binder 调用。
+ *
+ * 文件布局：
+ * * 头部 [HEADER_SIZE] 字节：magic、版本、容量、已发布的写入位置（总字节数）、已发布的记录数
+ * * 数据区 capacity 字节：记录按 4 字节对齐，`[length][sourceId][flags][payload]`，尾部放不下时写入 [PADDING] 从头开始
+ *
+ * 写方持有进程内的锁和头部的排他文件锁写入记录并发布写入位置；读方持有共享文件锁读取写入位置，
+ * 并把新的记录复制出来，释放锁之后再解析和回调。文件锁保证读到的位置和数据一致，
+ * 加锁和释放的系统调用同时保证了跨进程的内存可见性（映射内存上的普通读写在 ARM 上可能乱序）。
+ * 落后太多的读方跳到最新位置，丢失的记录数记在 [droppedCount]。
+ *
+ * 没有跨进程的唤醒原语，读线程空闲时从 1ms 指数退避到 32ms 轮询一次，每次轮询加一次共享文件锁（两次系统调用），
+ * 空闲时大约每秒 30 次。只在需要接收时 [start]，不需要时 [stop]。
+ * 只依赖 java.nio，可以在普通的 JVM 上用两个进程测试。每个进程对同一个文件只能创建一个实例。
+ *
+ * @param capacity 数据区大小，文件已经存在时使用文件中的容量
+ */
+class SharedEventTransport(
+    file: File,
+    capacity: Int = DEFAULT_CAPACITY
+) : Closeable {
+    private val raf = RandomAccessFile(file, "rw")
+    private val channel: FileChannel = raf.channel
+    private val buffer: MappedByteBuffer
+    private val capacity: Int
+
+    /**
+     * 区分发送方，读方跳过自己写入的记录
+     */
+    private val sourceId = Random().nextLong()
+    private val writeLock = Any()
+    private val maxRecordSize: Int
+
+    @Volatile
+    private var reader: Thread? = null
+
+    /**
+     * 读方没有交给 [Listener] 的记录数：落后太多被跳过的（包括这期间本进程自己写入的）、读到被覆盖的，
+     * 以及 [Listener.onRecord] 抛出异常的
+     */
+    @Volatile
+    var droppedCount = 0L
+        private set
+
+    init {
+        require(capacity >= MIN_CAPACITY && capacity % ALIGNMENT == 0) {
+            "capacity must be a multiple of $ALIGNMENT and >= $MIN_CAPACITY: $capacity"
+        }
+        val lock = channel.lock(0, HEADER_SIZE.toLong(), false)
+        this.capacity = try {
+            val header = ByteBuffer.allocate(HEADER_SIZE)
+            channel.read(header, 0)
+            if (header.getInt(MAGIC_OFFSET) == MAGIC) {
+                require(header.getInt(VERSION_OFFSET) == VERSION) {
+                    "unsupported version: ${header.getInt(VERSION_OFFSET)}"
+                }
+                header.getInt(CAPACITY_OFFSET)
+            } else {
+                raf.setLength((HEADER_SIZE + capacity).toLong())
+                header.clear()
+                header.putInt(MAGIC_OFFSET, MAGIC)
+                    .putInt(VERSION_OFFSET, VERSION)
+                    .putInt(CAPACITY_OFFSET, capacity)
+                    .putLong(WRITE_POSITION_OFFSET, 0L)
+                    .putLong(RECORD_COUNT_OFFSET, 0L)
+                channel.write(header, 0)
+                capacity
+            }
+        } finally {
+            lock.release()
+        }
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, (HEADER_SIZE + this.capacity).toLong())
+        maxRecordSize = this.capacity / 4
+    }
+
+    /**
+     * 可以写入的最大 payload，超过的事件会被 [send] 拒绝
+     */
+    val maxPayloadSize: Int
+        get() = maxRecordSize - RECORD_HEADER_SIZE
+
+    /**
+     * 可以在任意线程调用
+     *
+     * @param payload 从 position 到 limit 的内容
+     * @return false: payload 太大
+     */
+    fun send(payload: ByteBuffer, flags: Int = 0): Boolean {
+        val length = payload.remaining()
+        val recordSize = align(RECORD_HEADER_SIZE + length)
+        if (recordSize > maxRecordSize) return false
+        synchronized(writeLock) {
+            val lock = channel.lock(0, HEADER_SIZE.toLong(), false)
+            try {
+                var position = buffer.getLong(WRITE_POSITION_OFFSET)
+                var offset = (position % capacity).toInt()
+                val tail = capacity - offset
+                if (tail < recordSize) {
+                    buffer.putInt(HEADER_SIZE + offset, PADDING)
+                    position += tail
+                    offset = 0
+                }
+                val base = HEADER_SIZE + offset
+                buffer.putLong(base + SOURCE_OFFSET, sourceId)
+                buffer.putInt(base + FLAGS_OFFSET, flags)
+                val target = buffer.duplicate()
+                target.position(base + RECORD_HEADER_SIZE)
+                target.put(payload.duplicate())
+                // 先写数据再写长度，最后发布写入位置
+                buffer.putInt(base, length)
+                buffer.putLong(RECORD_COUNT_OFFSET, buffer.getLong(RECORD_COUNT_OFFSET) + 1)
+                buffer.putLong(WRITE_POSITION_OFFSET, position + recordSize)
+            } finally {
+                lock.release()
+            }
+        }
+        return true
+    }
+
+    /**
+     * 读线程是否在运行
+     */
+    val isReading: Boolean
+        get() = reader != null
+
+    /**
+     * 启动读线程，从当前写入位置开始读取，不会读到启动之前的记录
+     *
+     * @param listener 在读线程回调，每轮读到的记录连续回调，最后调用 [Listener.onBatchEnd]
+     */
+    @Synchronized
+    fun start(listener: Listener) {
+        check(reader == null) {
+            "already started"
+        }
+        val snapshot = ByteBuffer.allocate(capacity)
+        val source = buffer.duplicate()
+        val published = Published()
+        copyPublished(Long.MAX_VALUE, snapshot, source, published)
+        val thread = Thread({ readLoop(listener, snapshot, source, published) }, THREAD_NAME)
+        thread.isDaemon = true
+        reader = thread
+        thread.start()
+    }
+
+    /**
+     * 停止读线程，不再轮询，之后可以再次 [start]。发送不受影响。
+     * 不中断读线程：中断正在加文件锁的线程会关闭 [channel]，读线程在下一次轮询时退出
+     */
+    @Synchronized
+    fun stop() {
+        reader = null
+    }
+
+    private fun readLoop(listener: Listener, snapshot: ByteBuffer, source: ByteBuffer, start: Published) {
+        try {
+            poll(listener, snapshot, source, start)
+        } catch (e: ClosedChannelException) {
+            // 已经 close
+        } catch (e: InterruptedException) {
+            // 退出
+        }
+    }
+
+    /**
+     * @param snapshot 每轮复制新的记录，最多 capacity - maxRecordSize 字节，超过时视为落后太多
+     * @param start 开始读取的写入位置和记录数
+     */
+    private fun poll(listener: Listener, snapshot: ByteBuffer, source: ByteBuffer, start: Published) {
+        val record = snapshot.duplicate()
+        var position = start.position
+        var records = start.records
+        val published = Published()
+        var idleMillis = MIN_IDLE_MILLIS
+        val thread = Thread.currentThread()
+        while (reader === thread) {
+            copyPublished(position, snapshot, source, published)
+            if (published.position == position) {
+                Thread.sleep(idleMillis)
+                idleMillis = (idleMillis * 2).coerceAtMost(MAX_IDLE_MILLIS)
+                continue
+            }
+            idleMillis = MIN_IDLE_MILLIS
+            if (published.position - position > capacity - maxRecordSize) {
+                // 落后太多，中间的记录可能已经被覆盖
+                droppedCount += published.records - records
+                position = published.position
+                records = published.records
+                continue
+            }
+            // snapshot 从 position 开始，下标 = 写入位置 - 本轮开始的位置
+            val base = position
+            var delivered = false
+            while (position < published.position) {
+                val index = (position - base).toInt()
+                val length = snapshot.getInt(index)
+                if (length == PADDING) {
+                    position += capacity - (position % capacity)
+                    continue
+                }
+                if (length < 0 || RECORD_HEADER_SIZE + length > maxRecordSize) {
+                    // 之后的记录无法定位，全部丢弃
+                    break
+                }
+                records++
+                if (snapshot.getLong(index + SOURCE_OFFSET) != sourceId) {
+                    record.clear()
+                    record.position(index + RECORD_HEADER_SIZE)
+                    record.limit(index + RECORD_HEADER_SIZE + length)
+                    try {
+                        listener.onRecord(record, snapshot.getInt(index + FLAGS_OFFSET))
+                        delivered = true
+                    } catch (e: RuntimeException) {
+                        droppedCount++
+                        listener.onRecordFailed(e)
+                    }
+                }
+                position += align(RECORD_HEADER_SIZE + length)
+            }
+            droppedCount += published.records - records
+            position = published.position
+            records = published.records
+            if (delivered) {
+                listener.onBatchEnd()
+            }
+        }
+    }
+
+    /**
+     * 持有共享文件锁读取已发布的写入位置，并把 [from] 到该位置之间的数据复制到 [into]。
+     * 写方持有排他锁，所以复制的数据是完整的；落后太多或者没有新数据时不复制
+     *
+     * @param source 映射的 duplicate，只在读线程使用
+     * @param published 写入已发布的写入位置和记录数
+     */
+    private fun copyPublished(from: Long, into: ByteBuffer, source: ByteBuffer, published: Published) {
+        // 同一个进程不能对同一个文件重复加锁，和本进程的写方用 writeLock 互斥
+        synchronized(writeLock) {
+            val lock = channel.lock(0, HEADER_SIZE.toLong(), true)
+            try {
+                published.position = buffer.getLong(WRITE_POSITION_OFFSET)
+                published.records = buffer.getLong(RECORD_COUNT_OFFSET)
+                val length = published.position - from
+                if (length <= 0 || length > capacity - maxRecordSize) return
+                val offset = (from % capacity).toInt()
+                val first = minOf(length, (capacity - offset).toLong()).toInt()
+                into.clear()
+                source.clear()
+                source.position(HEADER_SIZE + offset)
+                source.limit(HEADER_SIZE + offset + first)
+                into.put(source)
+                if (first < length) {
+                    source.clear()
+                    source.position(HEADER_SIZE)
+                    source.limit(HEADER_SIZE + (length - first).toInt())
+                    into.put(source)
+                }
+            } finally {
+                lock.release()
+            }
+        }
+    }
+
+    /**
+     * 停止读线程并关闭文件，映射在 GC 时释放
+     */
+    override fun close() {
+        stop()
+        channel.close()
+        raf.close()
+    }
+
+    private class Published {
+        var position = 0L
+        var records = 0L
+    }
+
+    interface Listener {
+        /**
+         * @param payload 只在回调期间有效
+         */
+        fun onRecord(payload: ByteBuffer, flags: Int)
+
+        /**
+         * [onRecord] 抛出了异常，这条记录计入 [droppedCount]，继续读取之后的记录
+         */
+        fun onRecordFailed(e: RuntimeException) {}
+
+        fun onBatchEnd() {}
+    }
+
+    companion object {
+        const val DEFAULT_CAPACITY = 256 * 1024
+        private const val MIN_CAPACITY = 4 * 1024
+        private const val MAGIC = 0x4C454231 // LEB1
+        private const val VERSION = 2
+        private const val HEADER_SIZE = 64
+        private const val MAGIC_OFFSET = 0
+        private const val VERSION_OFFSET = 4
+        private const val CAPACITY_OFFSET = 8
+        private const val WRITE_POSITION_OFFSET = 16
+        private const val RECORD_COUNT_OFFSET = 24
+        private const val SOURCE_OFFSET = 4
+        private const val FLAGS_OFFSET = 12
+        private const val RECORD_HEADER_SIZE = 16
+        private const val PADDING = -1
+        private const val ALIGNMENT = 4
+        private const val MIN_IDLE_MILLIS = 1L
+        private const val MAX_IDLE_MILLIS = 32L
+        private const val THREAD_NAME = "LiveEventBus-shared"
+
+        private fun align(size: Int) = (size + ALIGNMENT - 1) and (ALIGNMENT - 1).inv()
+    }
+}
@@ -0,0 +1,112 @@
+package com.lwjlol.liveeventbus
+
+import androidx.annotation.AnyThread
+import androidx.annotation.MainThread
+import androidx.lifecycle.Lifecycle
+import androidx.lifecycle.LifecycleOwner
+import androidx.lifecycle.Observer
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicReference
+
+/**
+ * 共享的状态，例如购物车数量、连接状态，通过 [LiveEventBus.state] 获取。
+ *
+ * 和事件不同，状态总是有一个当前值：[value] 在任意线程同步读取，[update] 用 CAS 原子地修改，
+ * 新值和旧值 equals 时不会分发。分发在主线程每帧最多一次，只分发这一帧开始时的最新值，
+ * 一帧之内改回原来的值也不会分发。订阅的用法和 [EventLiveData] 相同，订阅时收到当前值。
+ */
+class StateChannel<T> internal constructor(
+    initial: T,
+    private val scheduler: MainScheduler = MainScheduler
+) {
+    private val state = AtomicReference(initial)
+    private val liveData = EventLiveData<T>(true, null)
+    private val frameScheduled = AtomicBoolean(false)
+
+    /**
+     * 最后一次分发的值，只在主线程访问
+     */
+    private var dispatched: Any? = NONE
+
+    private val dispatchFrame = Runnable {
+        frameScheduled.set(false)
+        val current = state.get()
+        if (dispatched !== NONE && dispatched == current) return@Runnable
+        dispatched = current
+        liveData.value = current
+    }
+
+    private val postFrame = Runnable {
+        scheduler.postFrame(dispatchFrame)
+    }
+
+    init {
+        scheduleDispatch()
+    }
+
+    /**
+     * 当前值，可能还没有分发给订阅
+     */
+    val value: T
+        get() = state.get()
+
+    /**
+     * 原子地把当前值修改为 [function] 的返回值，多个线程竞争时 [function] 可能被调用多次，不能有副作用
+     *
+     * @return 修改后的值
+     */
+    @AnyThread
+    fun update(function: (T) -> T): T {
+        while (true) {
+            val current = state.get()
+            val next = function(current)
+            if (next == current) return current
+            if (state.compareAndSet(current, next)) {
+                scheduleDispatch()
+                return next
+            }
+        }
+    }
+
+    @AnyThread
+    fun set(value: T) {
+        update { value }
+    }
+
+    private fun scheduleDispatch() {
+        if (!frameScheduled.compareAndSet(false, true)) return
+        // Choreographer 属于创建它的线程
+        if (scheduler.isMainThread()) {
+            postFrame.run()
+        } else {
+            scheduler.post(postFrame)
+        }
+    }
+
+    /**
+     * @param minState 见 [EventLiveData.observe]
+     */
+    @AnyThread
+    fun observe(
+        owner: LifecycleOwner,
+        ownerKey: String = EventLiveData.getKey(owner),
+        minState: Lifecycle.State = Lifecycle.State.STARTED,
+        observer: Observer<in T>
+    ): Subscription = liveData.observe(owner, ownerKey, minState = minState, observer = observer)
+
+    @AnyThread
+    fun observeForever(
+        owner: LifecycleOwner? = null,
+        ownerKey: String? = null,
+        observer: Observer<in T>
+    ): Subscription = liveData.observeForever(owner, ownerKey, observer)
+
+    @MainThread
+    fun removeObservers(owner: LifecycleOwner) {
+        liveData.removeObservers(owner)
+    }
+
+    private companion object {
+        val NONE = Any()
+    }
+}
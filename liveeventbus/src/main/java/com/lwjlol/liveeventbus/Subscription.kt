@@ -0,0 +1,25 @@
+package com.lwjlol.liveeventbus
+
+import androidx.annotation.AnyThread
+
+/**
+ * 一次订阅的句柄，可以主动取消；订阅绑定的 owner 销毁时也会自动取消。重复取消没有影响。
+ * 可以在任意线程取消，子线程的取消在主线程生效。
+ */
+interface Subscription {
+    @AnyThread
+    fun unsubscribe()
+}
+
+/**
+ * 同时注册在多个 [EventLiveData] 上的订阅，例如 [LiveEventBus.Bus] 同时订阅普通和粘性事件
+ */
+internal class CompositeSubscription(
+    private val first: Subscription,
+    private val second: Subscription
+) : Subscription {
+    override fun unsubscribe() {
+        first.unsubscribe()
+        second.unsubscribe()
+    }
+}
@@ -0,0 +1,375 @@
+package com.lwjlol.liveeventbus
+
+import androidx.lifecycle.Lifecycle
+import androidx.lifecycle.Observer
+
+/**
+ * [EventLiveData] 的订阅表，用平行数组代替每个订阅的对象和多个 Map。
+ *
+ * 分为两张表：
+ * * ownerKey 表：每个 ownerKey 一个槽位，保存待消费的值、已消费的 call 进度和引用计数，同一个 ownerKey 的订阅共用一个槽位
+ * * 订阅表：每个订阅一个槽位，保存 observer、所属的 ownerKey 槽位和状态标记
+ *
+ * 删除的槽位进入空闲链表复用，不移动其他槽位，所以槽位下标在订阅存活期间不变；
+ * 槽位每次释放都会增加 [subGenerations]，句柄通过 (槽位, generation) 判断订阅是否还存在，删除是 O(1) 的。
+ * 分发顺序保存在 [order] 中，按优先级从高到低、同优先级按注册顺序排列，分发时不需要排序；
+ * 其中活跃的订阅另外保存一份快照 [activeSlots]，只在订阅或者活跃状态变化后重建，分发时只遍历快照。
+ * 解绑的订阅（[FLAG_UNBOUND]）保留槽位、顺序和快照中的位置，分发时由 [isActive] 跳过，重新绑定时不需要重建。
+ * 只在主线程访问。
+ */
+internal class SubscriptionTable<T> {
+    private val keyIndex = HashMap<String, Int>(4)
+
+    /**
+     * 同一个 observer 的所有槽位串成双向链表，这里保存链表头
+     */
+    private val observerIndex = HashMap<Observer<in T>, Int>(4)
+
+    // ownerKey 表
+    var keyNames = arrayOfNulls<String>(INITIAL_CAPACITY)
+        private set
+    var keyPending = arrayOfNulls<Any>(INITIAL_CAPACITY)
+        private set
+    var keyCallSeen = IntArray(INITIAL_CAPACITY)
+        private set
+    private var keyRefs = IntArray(INITIAL_CAPACITY)
+    private var keyNextFree = IntArray(INITIAL_CAPACITY)
+    private var keyFreeHead = NO_SLOT
+    var keySize = 0
+        private set
+
+    // 订阅表
+    var observers = arrayOfNulls<Observer<in T>>(INITIAL_CAPACITY)
+        private set
+    var subKeys = IntArray(INITIAL_CAPACITY)
+        private set
+    var subFlags = IntArray(INITIAL_CAPACITY)
+        private set
+
+    /**
+     * 订阅所属 owner 的生命周期回调，没有 owner 时为 null
+     */
+    var subOwners = arrayOfNulls<Any>(INITIAL_CAPACITY)
+        private set
+
+    /**
+     * 订阅在所属 owner 槽位列表中的下标，由 owner 自己维护
+     */
+    var subOwnerPositions = IntArray(INITIAL_CAPACITY)
+        private set
+    var subGenerations = IntArray(INITIAL_CAPACITY)
+        private set
+    private var subNextSame = IntArray(INITIAL_CAPACITY)
+    private var subPrevSame = IntArray(INITIAL_CAPACITY)
+    private var subNextFree = IntArray(INITIAL_CAPACITY)
+    private var subFreeHead = NO_SLOT
+    private var subPriorities = IntArray(INITIAL_CAPACITY)
+
+    /**
+     * 订阅活跃需要的最低生命周期状态
+     */
+    var subMinStates = arrayOfNulls<Lifecycle.State>(INITIAL_CAPACITY)
+        private set
+
+    /**
+     * 非活跃期间积压的事件，只有设置了 [BacklogPolicy] 的订阅才有
+     */
+    var subBacklogs = arrayOfNulls<EventBacklog>(INITIAL_CAPACITY)
+        private set
+    var backlogCount = 0
+        private set
+    private var subOrderPositions = IntArray(INITIAL_CAPACITY)
+
+    /**
+     * 分发顺序，删除的订阅只标记为 [NO_SLOT]，下一次插入或者 [compactOrder] 时再压缩
+     */
+    var order = IntArray(INITIAL_CAPACITY)
+        private set
+    var orderSize = 0
+        private set
+    private var orderHoles = 0
+
+    /**
+     * 按分发顺序排列的活跃订阅，重建时创建新的数组，正在遍历的旧数组不会被修改
+     */
+    private var activeSnapshot = IntArray(0)
+    private var activeSnapshotSize = 0
+    private var snapshotDirty = false
+
+    /**
+     * 订阅表用到的最大槽位 + 1，遍历订阅时使用
+     */
+    var size = 0
+        private set
+
+    var subscriptionCount = 0
+        private set
+
+    /**
+     * @return ownerKey 的槽位，新建的槽位 [keyPending] 为 null
+     */
+    fun acquireKey(key: String): Int {
+        keyIndex[key]?.let {
+            keyRefs[it]++
+            return it
+        }
+        val slot = if (keyFreeHead != NO_SLOT) {
+            keyFreeHead.also {
+                keyFreeHead = keyNextFree[it]
+            }
+        } else {
+            if (keySize == keyNames.size) {
+                growKeys()
+            }
+            keySize++
+        }
+        keyNames[slot] = key
+        keyPending[slot] = null
+        keyCallSeen[slot] = 0
+        keyRefs[slot] = 1
+        keyIndex[key] = slot
+        return slot
+    }
+
+    /**
+     * 订阅改为使用 [keySlot]，原来的 ownerKey 没有订阅时释放
+     */
+    fun rebindKey(slot: Int, keySlot: Int) {
+        val old = subKeys[slot]
+        subKeys[slot] = keySlot
+        releaseKey(old)
+    }
+
+    private fun releaseKey(slot: Int) {
+        if (--keyRefs[slot] > 0) return
+        keyIndex.remove(keyNames[slot])
+        keyNames[slot] = null
+        keyPending[slot] = null
+        keyNextFree[slot] = keyFreeHead
+        keyFreeHead = slot
+    }
+
+    /**
+     * @param priority 越大越先分发
+     * @param minState 所属 owner 达到该状态时订阅活跃
+     */
+    fun add(
+        observer: Observer<in T>,
+        keySlot: Int,
+        flags: Int,
+        owner: Any?,
+        priority: Int,
+        minState: Lifecycle.State,
+        backlog: EventBacklog?
+    ): Int {
+        val slot = if (subFreeHead != NO_SLOT) {
+            subFreeHead.also {
+                subFreeHead = subNextFree[it]
+            }
+        } else {
+            if (size == observers.size) {
+                growSubscriptions()
+            }
+            size++
+        }
+        observers[slot] = observer
+        subKeys[slot] = keySlot
+        subFlags[slot] = flags
+        subOwners[slot] = owner
+        subPriorities[slot] = priority
+        subMinStates[slot] = minState
+        subBacklogs[slot] = backlog
+        if (backlog != null) {
+            backlogCount++
+        }
+        insertOrder(slot, priority)
+        val head = observerIndex.put(observer, slot) ?: NO_SLOT
+        subPrevSame[slot] = NO_SLOT
+        subNextSame[slot] = head
+        if (head != NO_SLOT) {
+            subPrevSame[head] = slot
+        }
+        subscriptionCount++
+        return slot
+    }
+
+    /**
+     * @return [observer] 的任意一个槽位，没有时返回 [NO_SLOT]
+     */
+    fun slotOf(observer: Observer<in T>): Int = observerIndex[observer] ?: NO_SLOT
+
+    fun isAlive(slot: Int, generation: Int) =
+        slot < size && subGenerations[slot] == generation && observers[slot] != null
+
+    fun remove(slot: Int) {
+        val observer = observers[slot] ?: return
+        val prev = subPrevSame[slot]
+        val next = subNextSame[slot]
+        if (prev != NO_SLOT) {
+            subNextSame[prev] = next
+        } else if (next != NO_SLOT) {
+            observerIndex[observer] = next
+        } else {
+            observerIndex.remove(observer)
+        }
+        if (next != NO_SLOT) {
+            subPrevSame[next] = prev
+        }
+        order[subOrderPositions[slot]] = NO_SLOT
+        orderHoles++
+        if (isLifecycleActive(slot)) {
+            snapshotDirty = true
+        }
+        observers[slot] = null
+        subFlags[slot] = 0
+        subOwners[slot] = null
+        subMinStates[slot] = null
+        if (subBacklogs[slot] != null) {
+            subBacklogs[slot] = null
+            backlogCount--
+        }
+        subGenerations[slot]++
+        releaseKey(subKeys[slot])
+        subNextFree[slot] = subFreeHead
+        subFreeHead = slot
+        subscriptionCount--
+    }
+
+    /**
+     * 同优先级插在最后，所以默认优先级的订阅是 O(1) 追加
+     */
+    private fun insertOrder(slot: Int, priority: Int) {
+        compactOrder()
+        if (orderSize == order.size) {
+            order = order.copyOf(orderSize * 2)
+        }
+        var position = orderSize
+        while (position > 0 && subPriorities[order[position - 1]] < priority) {
+            val moved = order[position - 1]
+            order[position] = moved
+            subOrderPositions[moved] = position
+            position--
+        }
+        order[position] = slot
+        subOrderPositions[slot] = position
+        orderSize++
+        if (isLifecycleActive(slot)) {
+            snapshotDirty = true
+        }
+    }
+
+    /**
+     * @return 活跃订阅的快照，有效长度为 [activeSlotCount]；快照中的订阅可能已经解绑，在遍历期间也可能被删除或者变为非活跃，
+     * 使用前需要检查 [isActive]
+     */
+    fun activeSlots(): IntArray {
+        if (snapshotDirty) {
+            rebuildSnapshot()
+        }
+        return activeSnapshot
+    }
+
+    val activeSlotCount: Int
+        get() {
+            if (snapshotDirty) {
+                rebuildSnapshot()
+            }
+            return activeSnapshotSize
+        }
+
+    private fun rebuildSnapshot() {
+        compactOrder()
+        var count = 0
+        for (i in 0 until orderSize) {
+            if (isLifecycleActive(order[i])) count++
+        }
+        val snapshot = IntArray(count)
+        count = 0
+        for (i in 0 until orderSize) {
+            val slot = order[i]
+            if (isLifecycleActive(slot)) {
+                snapshot[count++] = slot
+            }
+        }
+        activeSnapshot = snapshot
+        activeSnapshotSize = count
+        snapshotDirty = false
+    }
+
+    /**
+     * 去掉 [order] 中已删除的订阅，会移动其他订阅的位置，不能在遍历 [order] 时调用
+     */
+    fun compactOrder() {
+        if (orderHoles == 0) return
+        var size = 0
+        for (i in 0 until orderSize) {
+            val slot = order[i]
+            if (slot == NO_SLOT) continue
+            order[size] = slot
+            subOrderPositions[slot] = size
+            size++
+        }
+        orderSize = size
+        orderHoles = 0
+    }
+
+    /**
+     * 所属 owner 达到了订阅需要的状态并且没有解绑，可以收到事件
+     */
+    fun isActive(slot: Int) = subFlags[slot] and (FLAG_ACTIVE or FLAG_UNBOUND) == FLAG_ACTIVE
+
+    /**
+     * 只看生命周期，不管是否解绑
+     */
+    fun isLifecycleActive(slot: Int) = subFlags[slot] and FLAG_ACTIVE != 0
+
+    fun setActive(slot: Int, active: Boolean) {
+        if (isLifecycleActive(slot) == active) return
+        subFlags[slot] = if (active) subFlags[slot] or FLAG_ACTIVE else subFlags[slot] and FLAG_ACTIVE.inv()
+        snapshotDirty = true
+    }
+
+    fun isBound(slot: Int) = subFlags[slot] and FLAG_UNBOUND == 0
+
+    /**
+     * 只修改标记，不影响顺序和快照
+     */
+    fun setBound(slot: Int, bound: Boolean) {
+        subFlags[slot] = if (bound) subFlags[slot] and FLAG_UNBOUND.inv() else subFlags[slot] or FLAG_UNBOUND
+    }
+
+    private fun growKeys() {
+        val capacity = keyNames.size * 2
+        keyNames = keyNames.copyOf(capacity)
+        keyPending = keyPending.copyOf(capacity)
+        keyCallSeen = keyCallSeen.copyOf(capacity)
+        keyRefs = keyRefs.copyOf(capacity)
+        keyNextFree = keyNextFree.copyOf(capacity)
+    }
+
+    private fun growSubscriptions() {
+        val capacity = observers.size * 2
+        observers = observers.copyOf(capacity)
+        subKeys = subKeys.copyOf(capacity)
+        subFlags = subFlags.copyOf(capacity)
+        subOwners = subOwners.copyOf(capacity)
+        subOwnerPositions = subOwnerPositions.copyOf(capacity)
+        subGenerations = subGenerations.copyOf(capacity)
+        subNextSame = subNextSame.copyOf(capacity)
+        subPrevSame = subPrevSame.copyOf(capacity)
+        subNextFree = subNextFree.copyOf(capacity)
+        subPriorities = subPriorities.copyOf(capacity)
+        subMinStates = subMinStates.copyOf(capacity)
+        subBacklogs = subBacklogs.copyOf(capacity)
+        subOrderPositions = subOrderPositions.copyOf(capacity)
+    }
+
+    companion object {
+        const val NO_SLOT = -1
+        const val FLAG_ACTIVE = 1
+        const val FLAG_FOREVER = 1 shl 1
+        const val FLAG_UNBOUND = 1 shl 2
+        const val DEFAULT_PRIORITY = 0
+        private const val INITIAL_CAPACITY = 2
+    }
+}
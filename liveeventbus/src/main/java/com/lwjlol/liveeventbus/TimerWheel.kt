@@ -0,0 +1,153 @@
+package com.lwjlol.liveeventbus
+
+import android.os.SystemClock
+import androidx.annotation.AnyThread
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.locks.ReentrantLock
+import kotlin.concurrent.withLock
+
+/**
+ * 延迟发送的事件，调用 [unsubscribe] 取消，O(1)
+ */
+class ScheduledEvent internal constructor(
+    private val wheel: TimerWheel,
+    internal val event: Any,
+    internal val sticky: Boolean
+) : Subscription {
+    // 以下字段由 wheel 加锁访问
+    internal var rounds = 0L
+    internal var bucket = -1
+    internal var prev: ScheduledEvent? = null
+    internal var next: ScheduledEvent? = null
+
+    /**
+     * 还没有到期并且没有取消
+     */
+    val isPending: Boolean
+        get() = wheel.isScheduled(this)
+
+    @AnyThread
+    override fun unsubscribe() {
+        wheel.cancel(this)
+    }
+}
+
+/**
+ * 哈希时间轮：[wheelSize] 个桶，每 [tickMillis] 前进一格，超过一圈的定时记录剩余圈数。
+ * 添加和取消都是 O(1)，不占用主线程的 MessageQueue；由自己的线程推进，
+ * 每一格到期的事件一次性交给 [onExpired]。没有定时任务时线程一直等待。
+ *
+ * @param clock 和 [schedule] 的时间使用同一个时钟，默认 [SystemClock.uptimeMillis]
+ */
+internal class TimerWheel(
+    private val tickMillis: Long = DEFAULT_TICK_MILLIS,
+    private val wheelSize: Int = DEFAULT_WHEEL_SIZE,
+    private val clock: () -> Long = { SystemClock.uptimeMillis() },
+    private val onExpired: (events: List<ScheduledEvent>) -> Unit
+) {
+    private val lock = ReentrantLock()
+    private val changed = lock.newCondition()
+    private val buckets = arrayOfNulls<ScheduledEvent>(wheelSize)
+    private val startTime = clock()
+
+    /**
+     * 下一个要处理的格子
+     */
+    private var tick = 0L
+    private var count = 0
+    private var worker: Thread? = null
+
+    @AnyThread
+    fun schedule(event: Any, sticky: Boolean, uptimeMillis: Long): ScheduledEvent {
+        val scheduled = ScheduledEvent(this, event, sticky)
+        lock.withLock {
+            if (count == 0) {
+                // 空闲期间没有推进，直接跳到当前的格子
+                tick = (clock() - startTime) / tickMillis
+            }
+            val target = ((uptimeMillis - startTime + tickMillis - 1) / tickMillis).coerceAtLeast(tick)
+            scheduled.rounds = (target - tick) / wheelSize
+            val bucket = (target % wheelSize).toInt()
+            scheduled.bucket = bucket
+            val head = buckets[bucket]
+            scheduled.next = head
+            head?.prev = scheduled
+            buckets[bucket] = scheduled
+            count++
+            if (worker == null) {
+                worker = Thread({ run() }, THREAD_NAME).apply {
+                    isDaemon = true
+                    start()
+                }
+            } else if (count == 1) {
+                changed.signal()
+            }
+        }
+        return scheduled
+    }
+
+    fun isScheduled(scheduled: ScheduledEvent) = lock.withLock {
+        scheduled.bucket >= 0
+    }
+
+    @AnyThread
+    fun cancel(scheduled: ScheduledEvent) {
+        lock.withLock {
+            unlink(scheduled)
+        }
+    }
+
+    private fun unlink(scheduled: ScheduledEvent) {
+        val bucket = scheduled.bucket
+        if (bucket < 0) return
+        val prev = scheduled.prev
+        val next = scheduled.next
+        if (prev == null) {
+            buckets[bucket] = next
+        } else {
+            prev.next = next
+        }
+        next?.prev = prev
+        scheduled.prev = null
+        scheduled.next = null
+        scheduled.bucket = -1
+        count--
+    }
+
+    private fun run() {
+        while (true) {
+            var expired: ArrayList<ScheduledEvent>? = null
+            lock.withLock {
+                val now = clock()
+                while (count > 0 && startTime + tick * tickMillis <= now) {
+                    var scheduled = buckets[(tick % wheelSize).toInt()]
+                    while (scheduled != null) {
+                        val next = scheduled.next
+                        if (scheduled.rounds > 0) {
+                            scheduled.rounds--
+                        } else {
+                            unlink(scheduled)
+                            (expired ?: ArrayList<ScheduledEvent>().also { expired = it }).add(scheduled)
+                        }
+                        scheduled = next
+                    }
+                    tick++
+                }
+                if (expired == null) {
+                    if (count == 0) {
+                        changed.await()
+                    } else {
+                        changed.await((startTime + tick * tickMillis - now).coerceAtLeast(1), TimeUnit.MILLISECONDS)
+                    }
+                }
+            }
+            expired?.let(onExpired)
+        }
+    }
+
+    companion object {
+        const val DEFAULT_TICK_MILLIS = 10L
+        const val DEFAULT_WHEEL_SIZE = 512
+        private const val THREAD_NAME = "LiveEventBus-timer"
+    }
+}
@@ -0,0 +1,200 @@
+package com.lwjlol.liveeventbus
+
+import androidx.annotation.AnyThread
+import androidx.annotation.MainThread
+import androidx.collection.LruCache
+import androidx.lifecycle.Lifecycle
+import androidx.lifecycle.LifecycleEventObserver
+import androidx.lifecycle.LifecycleOwner
+import androidx.lifecycle.Observer
+
+/**
+ * 分层 topic 路由，topic 用 `/` 分隔，例如 `player/track/progress`。
+ *
+ * 订阅时可以使用通配符：
+ * * `+` 匹配一层，例如 `player/+/progress`
+ * * `#` 匹配剩余的任意层（包括 0 层），只能出现在最后，例如 `player/#`
+ *
+ * 订阅保存在按 topic 分段的字典树上，一次发送的匹配耗时只和 topic 的层数有关；
+ * 匹配结果按具体的 topic 缓存，订阅变化时清空缓存。所有方法都必须在主线程调用。
+ */
+class TopicRouter(maxCachedTopics: Int = DEFAULT_MAX_CACHED_TOPIC) {
+    private val root = Node()
+    private val cache = LruCache<String, Array<TopicSubscription>>(maxCachedTopics)
+
+    /**
+     * @param filter 订阅的 topic，可以包含通配符
+     * @param forever true: 直到 [owner] 销毁前都会收到回调；false: 仅在 [owner] 的生命周期 >= STARTED 时收到回调，其余时间的事件被丢弃
+     */
+    @MainThread
+    fun subscribe(
+        filter: String,
+        owner: LifecycleOwner?,
+        forever: Boolean,
+        observer: Observer<in TopicEvent>
+    ): TopicSubscription {
+        val segments = splitFilter(filter)
+        val subscription = TopicSubscription(this, filter, segments, owner, forever, observer)
+        if (owner != null && owner.lifecycle.currentState == Lifecycle.State.DESTROYED) {
+            subscription.removed = true
+            return subscription
+        }
+        var node = root
+        for (segment in segments) {
+            node = node.children[segment] ?: Node().also {
+                node.children[segment] = it
+            }
+        }
+        node.subscriptions.add(subscription)
+        cache.evictAll()
+        owner?.lifecycle?.addObserver(subscription)
+        return subscription
+    }
+
+    @MainThread
+    internal fun unsubscribe(subscription: TopicSubscription) {
+        if (subscription.removed) return
+        subscription.removed = true
+        subscription.owner?.lifecycle?.removeObserver(subscription)
+        remove(root, subscription.segments, 0, subscription)
+        cache.evictAll()
+    }
+
+    /**
+     * 删除订阅，顺便删掉空的节点
+     * @return [node] 是否已经为空
+     */
+    private fun remove(node: Node, segments: List<String>, depth: Int, subscription: TopicSubscription): Boolean {
+        if (depth == segments.size) {
+            node.subscriptions.remove(subscription)
+        } else {
+            val child = node.children[segments[depth]] ?: return false
+            if (remove(child, segments, depth + 1, subscription)) {
+                node.children.remove(segments[depth])
+            }
+        }
+        return node.subscriptions.isEmpty() && node.children.isEmpty()
+    }
+
+    @MainThread
+    fun dispatch(event: TopicEvent) {
+        val subscriptions = resolve(event.topic)
+        for (subscription in subscriptions) {
+            subscription.deliver(event)
+        }
+    }
+
+    /**
+     * @param topic 具体的 topic，不能包含通配符
+     * @return 匹配的订阅，已缓存的 topic 不会再遍历字典树
+     */
+    @MainThread
+    fun resolve(topic: String): Array<TopicSubscription> {
+        cache[topic]?.let {
+            return it
+        }
+        val segments = topic.split(SEPARATOR)
+        require(segments.none { it == SINGLE_LEVEL || it == MULTI_LEVEL }) {
+            "topic can not contain wildcard: $topic"
+        }
+        val result = ArrayList<TopicSubscription>(4)
+        collect(root, segments, 0, result)
+        val matched = if (result.isEmpty()) EMPTY else result.toTypedArray()
+        cache.put(topic, matched)
+        return matched
+    }
+
+    private fun collect(
+        node: Node,
+        segments: List<String>,
+        depth: Int,
+        result: ArrayList<TopicSubscription>
+    ) {
+        node.children[MULTI_LEVEL]?.let {
+            result.addAll(it.subscriptions)
+        }
+        if (depth == segments.size) {
+            result.addAll(node.subscriptions)
+            return
+        }
+        node.children[segments[depth]]?.let {
+            collect(it, segments, depth + 1, result)
+        }
+        node.children[SINGLE_LEVEL]?.let {
+            collect(it, segments, depth + 1, result)
+        }
+    }
+
+    private fun splitFilter(filter: String): List<String> {
+        val segments = filter.split(SEPARATOR)
+        segments.forEachIndexed { index, segment ->
+            require(segment != MULTI_LEVEL || index == segments.size - 1) {
+                "'#' must be the last level of the topic filter: $filter"
+            }
+            require(segment.length == 1 || (!segment.contains(SINGLE_LEVEL) && !segment.contains(MULTI_LEVEL))) {
+                "wildcard must occupy an entire level of the topic filter: $filter"
+            }
+        }
+        return segments
+    }
+
+    private class Node {
+        val children = HashMap<String, Node>(4)
+        val subscriptions = ArrayList<TopicSubscription>(2)
+    }
+
+    /**
+     * topic 订阅，可以通过 [unsubscribe] 主动取消，[owner] 销毁时自动取消
+     */
+    class TopicSubscription internal constructor(
+        private val router: TopicRouter,
+        val filter: String,
+        internal val segments: List<String>,
+        internal val owner: LifecycleOwner?,
+        private val forever: Boolean,
+        private val observer: Observer<in TopicEvent>
+    ) : LifecycleEventObserver, Subscription {
+        internal var removed = false
+
+        internal fun deliver(event: TopicEvent) {
+            if (removed) return
+            if (!forever && owner != null && !owner.lifecycle.currentState.isAtLeast(Lifecycle.State.STARTED)) {
+                return
+            }
+            observer.onChanged(event)
+        }
+
+        @AnyThread
+        override fun unsubscribe() {
+            if (EventLiveData.isMainThread()) {
+                router.unsubscribe(this)
+            } else {
+                EventLiveData.mainHandler.post {
+                    router.unsubscribe(this)
+                }
+            }
+        }
+
+        override fun onStateChanged(source: LifecycleOwner, event: Lifecycle.Event) {
+            if (event == Lifecycle.Event.ON_DESTROY) {
+                unsubscribe()
+            }
+        }
+    }
+
+    companion object {
+        private const val DEFAULT_MAX_CACHED_TOPIC = 128
+        private const val SEPARATOR = '/'
+        const val SINGLE_LEVEL = "+"
+        const val MULTI_LEVEL = "#"
+        private val EMPTY = emptyArray<TopicSubscription>()
+    }
+}
+
+/**
+ * 通过 [LiveEventBus.sendTopic] 发送的事件
+ */
+data class TopicEvent(
+    val topic: String,
+    val value: Any?
+)
@@ -0,0 +1,225 @@
+package com.lwjlol.liveeventbus
+
+import androidx.annotation.AnyThread
+import androidx.annotation.WorkerThread
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * 工作队列，通过 [LiveEventBus.work] 获取。和 [LiveEventBus.on] 的广播不同：
+ * 每个 [ConsumerGroup] 都会收到所有的任务，但同一个组内的任务只会被一个成员处理。
+ *
+ * 成员主动拉取任务，处理得快的成员自然拉取得多；[WorkConsumer.drainTo] 可以一次拉取多个。
+ * 发送时还没有创建的组收不到之前的任务。
+ *
+ * @param capacity 每个组最多积压的任务数量，超过时新任务对该组被丢弃，记录在 [ConsumerGroup.Metrics.dropped]
+ */
+class WorkChannel<T> internal constructor(private val capacity: Int) {
+    private val groups = ConcurrentHashMap<String, ConsumerGroup<T>>()
+
+    /**
+     * 获取或者创建一个组
+     */
+    @AnyThread
+    fun group(name: String): ConsumerGroup<T> =
+        groups[name] ?: ConsumerGroup<T>(name, capacity).let {
+            groups.putIfAbsent(name, it) ?: it
+        }
+
+    /**
+     * 删除组，积压的任务被丢弃，阻塞在 [WorkConsumer.take]/[WorkConsumer.poll] 的成员被唤醒并抛出 [IllegalStateException]
+     */
+    @AnyThread
+    fun removeGroup(name: String) {
+        groups.remove(name)?.remove()
+    }
+
+    /**
+     * @return 收到任务的组的数量
+     */
+    @AnyThread
+    fun send(item: T): Int {
+        var accepted = 0
+        for (group in groups.values) {
+            if (group.offer(item)) {
+                accepted++
+            }
+        }
+        return accepted
+    }
+
+    @AnyThread
+    fun metrics(): List<ConsumerGroup.Metrics> = groups.values.map { it.metrics() }
+}
+
+/**
+ * 消费组，任务在组内的成员之间分配
+ */
+class ConsumerGroup<T> internal constructor(
+    val name: String,
+    capacity: Int
+) {
+    /**
+     * 任务，删除后只有一个 [REMOVED]
+     */
+    internal val queue = LinkedBlockingQueue<Any>(capacity)
+
+    @Volatile
+    internal var removed = false
+        private set
+    private val produced = AtomicLong(0)
+    private val consumed = AtomicLong(0)
+    private val dropped = AtomicLong(0)
+    private val members = AtomicLong(0)
+
+    internal fun offer(item: T): Boolean {
+        produced.incrementAndGet()
+        if (!removed && queue.offer(item)) return true
+        dropped.incrementAndGet()
+        return false
+    }
+
+    internal fun remove() {
+        removed = true
+        // 同时发送的任务可能占满队列
+        do {
+            queue.clear()
+        } while (!queue.offer(REMOVED))
+    }
+
+    /**
+     * 加入组，每个工作线程一个成员
+     */
+    @AnyThread
+    fun join(): WorkConsumer<T> {
+        members.incrementAndGet()
+        return WorkConsumer(this)
+    }
+
+    internal fun onLeave() {
+        members.decrementAndGet()
+    }
+
+    internal fun onConsumed(count: Int) {
+        consumed.addAndGet(count.toLong())
+    }
+
+    @AnyThread
+    fun metrics() = Metrics(
+        name,
+        produced.get(),
+        consumed.get(),
+        dropped.get(),
+        if (removed) 0 else queue.size,
+        members.get().toInt()
+    )
+
+    /**
+     * @param lag 还没有被拉取的任务数量
+     */
+    data class Metrics(
+        val group: String,
+        val produced: Long,
+        val consumed: Long,
+        val dropped: Long,
+        val lag: Int,
+        val members: Int
+    )
+}
+
+/**
+ * 组内的一个成员，在工作线程拉取任务，不再使用时调用 [close]
+ */
+class WorkConsumer<T> internal constructor(private val group: ConsumerGroup<T>) {
+    @Volatile
+    private var closed = false
+
+    /**
+     * 这个成员拉取的任务数量
+     */
+    @Volatile
+    var consumedCount = 0L
+        private set
+
+    /**
+     * 阻塞直到拉取到一个任务，组被删除时抛出 [IllegalStateException]
+     */
+    @WorkerThread
+    fun take(): T {
+        checkOpen()
+        return receive(group.queue.take())
+    }
+
+    /**
+     * 组被删除时抛出 [IllegalStateException]
+     *
+     * @return 超时返回 null
+     */
+    @WorkerThread
+    fun poll(timeoutMillis: Long): T? {
+        checkOpen()
+        return receive(group.queue.poll(timeoutMillis, TimeUnit.MILLISECONDS) ?: return null)
+    }
+
+    /**
+     * 不阻塞，一次最多拉取 [maxItems] 个任务
+     *
+     * @return 拉取的数量
+     */
+    @AnyThread
+    fun drainTo(out: MutableCollection<in T>, maxItems: Int): Int {
+        checkOpen()
+        @Suppress("UNCHECKED_CAST")
+        var count = group.queue.drainTo(out as MutableCollection<Any>, maxItems)
+        if (group.removed && out.remove(REMOVED)) {
+            group.queue.offer(REMOVED)
+            count--
+        }
+        if (count > 0) {
+            onConsumed(count)
+        }
+        return count
+    }
+
+    private fun checkOpen() {
+        check(!closed) {
+            "consumer is closed"
+        }
+        check(!group.removed) {
+            "group ${group.name} is removed"
+        }
+    }
+
+    private fun receive(item: Any): T {
+        if (item === REMOVED) {
+            // 留给同一组中其他阻塞的成员
+            group.queue.offer(item)
+            throw IllegalStateException("group ${group.name} is removed")
+        }
+        onConsumed(1)
+        @Suppress("UNCHECKED_CAST")
+        return item as T
+    }
+
+    private fun onConsumed(count: Int) {
+        consumedCount += count
+        group.onConsumed(count)
+    }
+
+    /**
+     * 离开组，已经拉取的任务仍然由调用方处理
+     */
+    @AnyThread
+    fun close() {
+        if (closed) return
+        closed = true
+        group.onLeave()
+    }
+}
+
+/**
+ * 组被删除后放入队列，唤醒阻塞的成员
+ */
+private val REMOVED = Any()
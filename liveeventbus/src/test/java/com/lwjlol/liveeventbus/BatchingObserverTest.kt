@@ -0,0 +1,95 @@
+package com.lwjlol.liveeventbus
+
+import androidx.lifecycle.Lifecycle
+import androidx.lifecycle.LifecycleObserver
+import androidx.lifecycle.LifecycleOwner
+import androidx.lifecycle.Observer
+import org.junit.Assert.assertEquals
+import org.junit.Test
+
+class BatchingObserverTest {
+    private class FixedLifecycle(var state: State) : Lifecycle() {
+        override fun addObserver(observer: LifecycleObserver) {}
+
+        override fun removeObserver(observer: LifecycleObserver) {}
+
+        override fun getCurrentState() = state
+    }
+
+    private val lifecycle = FixedLifecycle(Lifecycle.State.RESUMED)
+    private val owner = LifecycleOwner { lifecycle }
+    private val scheduler = FakeScheduler()
+    private val batches = ArrayList<List<Int>>()
+
+    private fun batching(maxBatchSize: Int, onBatch: (BatchingObserver<Int>, List<Int>) -> Unit = { _, _ -> }) {
+        lateinit var batching: BatchingObserver<Int>
+        batching = BatchingObserver(owner, maxBatchSize, 100, Observer {
+            batches.add(ArrayList(it))
+            onBatch(batching, it)
+        }, scheduler)
+        this.batching = batching
+    }
+
+    private lateinit var batching: BatchingObserver<Int>
+
+    @Test
+    fun flushesWhenFullOrAfterLatency() {
+        batching(3)
+        (1..4).forEach { batching.onChanged(it) }
+        assertEquals(listOf(listOf(1, 2, 3)), batches)
+        scheduler.advanceBy(99)
+        assertEquals(1, batches.size)
+        scheduler.advanceBy(1)
+        assertEquals(listOf(listOf(1, 2, 3), listOf(4)), batches)
+        assertEquals(0, scheduler.pendingCount)
+    }
+
+    @Test
+    fun eventsSentDuringCallbackAreDeliveredInNextBatch() {
+        batching(2) { batching, batch ->
+            if (batch.first() < 10) {
+                batching.onChanged(batch.first() + 10)
+            }
+        }
+        batching.onChanged(1)
+        batching.onChanged(2)
+        assertEquals(listOf(listOf(1, 2)), batches)
+        scheduler.advanceBy(100)
+        assertEquals(listOf(listOf(1, 2), listOf(11)), batches)
+    }
+
+    @Test
+    fun fullBatchSentDuringCallbackIsDeliveredImmediatelyAfter() {
+        batching(2) { batching, batch ->
+            if (batch.first() < 10) {
+                batching.onChanged(batch[0] + 10)
+                batching.onChanged(batch[1] + 10)
+                batching.onChanged(batch[1] + 20)
+            }
+        }
+        batching.onChanged(1)
+        batching.onChanged(2)
+        // 回调期间不能分发，攒满之后收到的事件也在同一批
+        assertEquals(listOf(listOf(1, 2), listOf(11, 12, 22)), batches)
+        assertEquals(0, scheduler.pendingCount)
+    }
+
+    @Test
+    fun unsubscribe_dropsPendingEvents() {
+        batching(10)
+        batching.onChanged(1)
+        batching.unsubscribe()
+        batching.onChanged(2)
+        scheduler.advanceBy(100)
+        assertEquals(emptyList<List<Int>>(), batches)
+    }
+
+    @Test
+    fun destroyedOwner_dropsBatch() {
+        batching(10)
+        batching.onChanged(1)
+        lifecycle.state = Lifecycle.State.DESTROYED
+        scheduler.advanceBy(100)
+        assertEquals(emptyList<List<Int>>(), batches)
+    }
+}
@@ -0,0 +1,37 @@
+package com.lwjlol.liveeventbus
+
+import org.junit.Assume
+
+/**
+ * 基准测试默认跳过，运行：`./gradlew :liveeventbus:testDebugUnitTest -Pbenchmark=true`
+ */
+internal fun assumeBenchmark() {
+    Assume.assumeTrue(System.getProperty("liveeventbus.benchmark") == "true")
+}
+
+/**
+ * 先预热 [warmup] 轮，再取 [rounds] 轮中最快的一轮
+ *
+ * @return 每次操作的纳秒数
+ */
+internal inline fun measureNanosPerOp(
+    operations: Int,
+    rounds: Int = 5,
+    warmup: Int = 3,
+    block: () -> Unit
+): Double {
+    var best = Long.MAX_VALUE
+    repeat(warmup + rounds) { round ->
+        val start = System.nanoTime()
+        block()
+        val elapsed = System.nanoTime() - start
+        if (round >= warmup && elapsed < best) {
+            best = elapsed
+        }
+    }
+    return best.toDouble() / operations
+}
+
+internal fun report(name: String, vararg results: Pair<String, Any>) {
+    println("[benchmark] $name " + results.joinToString { "${it.first}=${it.second}" })
+}
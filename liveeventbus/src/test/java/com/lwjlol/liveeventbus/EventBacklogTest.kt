@@ -0,0 +1,63 @@
+package com.lwjlol.liveeventbus
+
+import org.junit.Assert.assertEquals
+import org.junit.Test
+
+class EventBacklogTest {
+    private fun EventBacklog.drain(): List<Any?> {
+        val values = ArrayList<Any?>()
+        while (size > 0) {
+            values.add(poll())
+        }
+        return values
+    }
+
+    @Test
+    fun keepsOrderWhileGrowing() {
+        val backlog = EventBacklog(BacklogPolicy(100))
+        repeat(3) { backlog.offer(it) }
+        assertEquals(0, backlog.poll())
+        // head 不在 0 时扩容
+        for (i in 3 until 20) {
+            backlog.offer(i)
+        }
+        assertEquals((1 until 20).toList(), backlog.drain())
+    }
+
+    @Test
+    fun dropOldest_keepsLatestCapacityEvents() {
+        val backlog = EventBacklog(BacklogPolicy(5, BacklogPolicy.Overflow.DROP_OLDEST))
+        for (i in 0 until 12) {
+            backlog.offer(i)
+        }
+        assertEquals(5, backlog.size)
+        assertEquals(listOf<Any?>(7, 8, 9, 10, 11), backlog.drain())
+    }
+
+    @Test
+    fun dropLatest_keepsFirstCapacityEvents() {
+        val backlog = EventBacklog(BacklogPolicy(5, BacklogPolicy.Overflow.DROP_LATEST))
+        for (i in 0 until 12) {
+            backlog.offer(i)
+        }
+        assertEquals(listOf<Any?>(0, 1, 2, 3, 4), backlog.drain())
+    }
+
+    @Test
+    fun reusableAfterDrain() {
+        val backlog = EventBacklog(BacklogPolicy(3))
+        backlog.offer("a")
+        backlog.offer(null)
+        assertEquals(listOf("a", null), backlog.drain())
+        backlog.offer("b")
+        backlog.offer("c")
+        backlog.offer("d")
+        backlog.offer("e")
+        assertEquals(listOf<Any?>("c", "d", "e"), backlog.drain())
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun capacityMustBePositive() {
+        BacklogPolicy(0)
+    }
+}
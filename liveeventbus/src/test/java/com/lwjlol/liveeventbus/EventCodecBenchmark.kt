@@ -0,0 +1,73 @@
+package com.lwjlol.liveeventbus
+
+import org.junit.Assert.assertEquals
+import org.junit.Before
+import org.junit.Test
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.ObjectInputStream
+import java.io.ObjectOutputStream
+import java.io.Serializable
+import java.nio.ByteBuffer
+
+/**
+ * [EventCodecs] 和 Java 序列化的对比，和 Parcelable 的对比在 androidTest 的 EventCodecParcelBenchmark
+ */
+class EventCodecBenchmark {
+    data class PlayerEvent(
+        val trackId: Long,
+        val position: Long,
+        val title: String,
+        val playing: Boolean
+    ) : Serializable
+
+    private val event = PlayerEvent(42, 123_456, "Track title", true)
+
+    @Before
+    fun setUp() {
+        assumeBenchmark()
+    }
+
+    @Test
+    fun encodeDecode_vsJavaSerialization() {
+        val buffer = ByteBuffer.allocate(1024)
+        val codec = EventCodecs.get(PlayerEvent::class.java)
+        var decoded: PlayerEvent? = null
+        val codecNanos = measureNanosPerOp(ITERATIONS) {
+            repeat(ITERATIONS) {
+                buffer.clear()
+                codec.encode(event, buffer)
+                buffer.flip()
+                decoded = codec.decode(buffer)
+            }
+        }
+        assertEquals(event, decoded)
+        buffer.clear()
+        codec.encode(event, buffer)
+        val codecBytes = buffer.position()
+
+        var serializedBytes = 0
+        val serializationNanos = measureNanosPerOp(ITERATIONS) {
+            repeat(ITERATIONS) {
+                val output = ByteArrayOutputStream(256)
+                ObjectOutputStream(output).use { it.writeObject(event) }
+                val bytes = output.toByteArray()
+                serializedBytes = bytes.size
+                decoded = ObjectInputStream(ByteArrayInputStream(bytes)).use { it.readObject() } as PlayerEvent
+            }
+        }
+        assertEquals(event, decoded)
+
+        report(
+            "EventCodec vs Serializable",
+            "codecNs" to "%.0f".format(codecNanos),
+            "codecBytes" to codecBytes,
+            "serializableNs" to "%.0f".format(serializationNanos),
+            "serializableBytes" to serializedBytes
+        )
+    }
+
+    private companion object {
+        const val ITERATIONS = 20_000
+    }
+}
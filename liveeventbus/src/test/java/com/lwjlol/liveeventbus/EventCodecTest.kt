@@ -0,0 +1,149 @@
+package com.lwjlol.liveeventbus
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertThrows
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.nio.ByteBuffer
+
+class EventCodecTest {
+    enum class Mode { A, B }
+
+    data class Inner(val id: Long, val label: String?)
+
+    /**
+     * 声明顺序和字段名的顺序不同，并且有多个类型相同的字段
+     */
+    data class Event(
+        val zeta: String,
+        val alpha: String,
+        val count: Int,
+        val bonus: Int,
+        val mode: Mode,
+        val inner: Inner?,
+        val ratio: Double?
+    )
+
+    /**
+     * 字段类型各不相同，通过构造函数创建
+     */
+    data class Distinct(val name: String, val count: Int, val mode: Mode)
+
+    /**
+     * 同一个类型里有非空和可空的字段，参数按类型对应时可能把 null 传给非空参数
+     */
+    data class NullableSameType(val title: String, val subtitle: String?)
+
+    class NoMatchingConstructor(val id: Int) {
+        var label: String = "default"
+    }
+
+    data class WithList(val id: Int, val tags: List<String>)
+
+    data class NestedUnsupported(val id: Int, val inner: WithList)
+
+    interface Payload {
+        val value: Int
+    }
+
+    data class IntPayload(override val value: Int) : Payload
+
+    data class WithRegisteredInterface(val id: Long, val payload: Payload)
+
+    data class Node(val value: Int, val next: Node?)
+
+    private fun <T : Any> roundTrip(event: T): T {
+        val buffer = ByteBuffer.allocate(1024)
+        EventCodecs.encode(event, buffer)
+        buffer.flip()
+        val decoded = EventCodecs.get(event.javaClass).decode(buffer)
+        assertEquals(0, buffer.remaining())
+        return decoded
+    }
+
+    @Test
+    fun reflectiveCodec_keepsFieldsOfTheSameTypeApart() {
+        val event = Event("z", "a", 1, 2, Mode.B, Inner(7, "seven"), 0.5)
+        assertEquals(event, roundTrip(event))
+    }
+
+    @Test
+    fun reflectiveCodec_handlesNull() {
+        val event = Event("z", "a", -1, Int.MAX_VALUE, Mode.A, Inner(0, null), null)
+        assertEquals(event, roundTrip(event))
+        assertEquals(event.copy(inner = null), roundTrip(event.copy(inner = null)))
+    }
+
+    @Test
+    fun reflectiveCodec_encodesFieldsInNameOrder() {
+        val buffer = ByteBuffer.allocate(64)
+        EventCodecs.encode(Inner(3, "x"), buffer)
+        buffer.flip()
+        // id 在 label 之前：[id][非空][length][char]
+        assertEquals(3L, buffer.long)
+        assertEquals(1.toByte(), buffer.get())
+        assertEquals(1, buffer.int)
+        assertEquals('x', buffer.char)
+    }
+
+    @Test
+    fun reflectiveCodec_usesConstructorWhenTypesAreDistinct() {
+        val event = Distinct("n", 3, Mode.A)
+        assertEquals(event, roundTrip(event))
+    }
+
+    @Test
+    fun reflectiveCodec_sameTypeWithNullDoesNotHitNullCheck() {
+        val event = NullableSameType("title", null)
+        assertEquals(event, roundTrip(event))
+    }
+
+    @Test
+    fun reflectiveCodec_withoutMatchingConstructor() {
+        val event = NoMatchingConstructor(5).apply { label = "five" }
+        val decoded = roundTrip(event)
+        assertEquals(5, decoded.id)
+        assertEquals("five", decoded.label)
+    }
+
+    @Test
+    fun primitiveCodec_roundTrip() {
+        val event = LiveEventBus.PrimitiveStringEvent("key", true, "value")
+        assertEquals(event, roundTrip(event))
+    }
+
+    @Test
+    fun reflectiveCodec_rejectsCollectionFieldByName() {
+        val e = assertThrows(IllegalArgumentException::class.java) {
+            EventCodecs.get(WithList::class.java)
+        }
+        assertTrue(e.message!!, e.message!!.contains("WithList.tags"))
+    }
+
+    @Test
+    fun reflectiveCodec_rejectsNestedUnsupportedField() {
+        val e = assertThrows(IllegalArgumentException::class.java) {
+            EventCodecs.get(NestedUnsupported::class.java)
+        }
+        assertTrue(e.message!!, e.message!!.contains("NestedUnsupported.inner.tags"))
+    }
+
+    @Test
+    fun reflectiveCodec_acceptsInterfaceWithRegisteredCodec() {
+        EventCodecs.register(Payload::class.java, object : EventCodec<Payload> {
+            override fun encode(event: Payload, buffer: ByteBuffer) {
+                buffer.putInt(event.value)
+            }
+
+            override fun decode(buffer: ByteBuffer): Payload = IntPayload(buffer.int)
+        })
+        val event = WithRegisteredInterface(1, IntPayload(2))
+        assertEquals(event, roundTrip(event))
+    }
+
+    @Test
+    fun reflectiveCodec_acceptsSelfReference() {
+        val event = Node(1, Node(2, null))
+        assertEquals(event, roundTrip(event))
+    }
+}
@@ -0,0 +1,103 @@
+package com.lwjlol.liveeventbus
+
+import androidx.arch.core.executor.ArchTaskExecutor
+import androidx.arch.core.executor.TaskExecutor
+import androidx.lifecycle.Observer
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Rule
+import org.junit.Test
+
+class EventLiveDataTest {
+    @get:Rule
+    val main = MainThreadRule()
+
+    private val owner = TestOwner()
+    private val received = ArrayList<String>()
+
+    @After
+    fun tearDown() {
+        LiveEventBus.instance.setEventTracer(null)
+    }
+
+    @Test
+    fun consume_stopsLowerPriorityObservers() {
+        val liveData = EventLiveData<Int>(sticky = false)
+        liveData.observe(owner, "high", 1, Observer {
+            received.add("high:$it")
+            LiveEventBus.consume()
+        })
+        liveData.observe(owner, "low", 0, Observer { received.add("low:$it") })
+        liveData.value = 1
+        assertEquals(listOf("high:1"), received)
+    }
+
+    @Test
+    fun consume_isKeptWhenCallbackAlsoSubscribes() {
+        val liveData = EventLiveData<Int>(sticky = false)
+        liveData.observe(owner, "first", 1, Observer {
+            received.add("first:$it")
+            if (it == 1) {
+                liveData.observe(owner, "added", 0, Observer { value -> received.add("added:$value") })
+                LiveEventBus.consume()
+            }
+        })
+        liveData.observe(owner, "second", 0, Observer { received.add("second:$it") })
+        liveData.value = 1
+        assertEquals(listOf("first:1"), received)
+
+        // 回调中新增的订阅从下一个事件开始收到
+        received.clear()
+        liveData.value = 2
+        assertEquals(setOf("first:2", "second:2", "added:2"), received.toSet())
+    }
+
+    @Test
+    fun postTrace_endsWhenPostedValueIsDelivered() {
+        val posted = ArrayList<Runnable>()
+        ArchTaskExecutor.getInstance().setDelegate(object : TaskExecutor() {
+            override fun executeOnDiskIO(runnable: Runnable) = runnable.run()
+
+            override fun postToMainThread(runnable: Runnable) {
+                posted.add(runnable)
+            }
+
+            override fun isMainThread() = true
+        })
+        val sections = ArrayList<String>()
+        LiveEventBus.instance.setEventTracer(object : EventTracer {
+            override fun beginSection(label: String) {}
+
+            override fun endSection() {}
+
+            override fun beginAsyncSection(label: String, cookie: Int) {
+                sections.add("begin")
+            }
+
+            override fun endAsyncSection(label: String, cookie: Int) {
+                sections.add("end")
+            }
+        })
+        val liveData = EventLiveData<Int>(sticky = false)
+        liveData.observe(owner, "key", 0, Observer { received.add("key:$it") })
+        liveData.postValue(1)
+        // 主线程直接发送的事件不会结束还在排队的 post
+        liveData.value = 2
+        assertEquals(listOf("begin"), sections)
+
+        posted.removeAt(0).run()
+        assertEquals(listOf("begin", "end"), sections)
+        assertEquals(listOf("key:2", "key:1"), received)
+        assertEquals(1, liveData.value)
+    }
+
+    @Test
+    fun filteredObservers_runAfterNormalObserversAndIgnoreOwnerKey() {
+        val liveData = EventLiveData<Int>(sticky = false)
+        val parity = KeySelector<Int> { it % 2 }
+        liveData.observeFiltered(owner, parity, 1, "page", observer = Observer { received.add("filtered:$it") })
+        liveData.observe(owner, "page", -1, Observer { received.add("normal:$it") })
+        liveData.value = 1
+        assertEquals(listOf("normal:1", "filtered:1"), received)
+    }
+}
@@ -0,0 +1,96 @@
+package com.lwjlol.liveeventbus
+
+import org.junit.Assert.assertEquals
+import org.junit.Before
+import org.junit.Test
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+/**
+ * 有序分发（[EventSequencer]）和无序分发（每个事件单独 post 到主线程）的对比。
+ * 单线程的 executor 模拟主线程，多个线程同时发送。
+ */
+class EventSequencerBenchmark {
+    private class ExecutorScheduler : MainScheduler {
+        val executor = Executors.newSingleThreadExecutor()
+        @Volatile
+        var mainThread: Thread? = null
+
+        init {
+            executor.submit { mainThread = Thread.currentThread() }.get()
+        }
+
+        override fun isMainThread() = Thread.currentThread() === mainThread
+
+        override fun post(task: Runnable) {
+            executor.execute(task)
+        }
+
+        override fun postDelayed(task: Runnable, delayMillis: Long) {
+            executor.execute(task)
+        }
+
+        override fun remove(task: Runnable) {}
+
+        override fun uptimeMillis() = System.nanoTime() / 1_000_000
+    }
+
+    @Before
+    fun setUp() {
+        assumeBenchmark()
+    }
+
+    @Test
+    fun orderedVsUnordered() {
+        val scheduler = ExecutorScheduler()
+        try {
+            for (threads in intArrayOf(1, 4)) {
+                val unordered = measureNanosPerOp(EVENTS) {
+                    sendConcurrently(threads) { done ->
+                        val task = Runnable { done.countDown() }
+                        return@sendConcurrently { scheduler.post(task) }
+                    }
+                }
+                val ordered = measureNanosPerOp(EVENTS) {
+                    sendConcurrently(threads) { done ->
+                        val sequencer = EventSequencer(scheduler) { _, _ -> done.countDown() }
+                        return@sendConcurrently { sequencer.offer(EVENT, false, true) }
+                    }
+                }
+                report(
+                    "EventSequencer threads=$threads",
+                    "unorderedNs" to "%.0f".format(unordered),
+                    "orderedNs" to "%.0f".format(ordered)
+                )
+            }
+        } finally {
+            scheduler.executor.shutdown()
+        }
+    }
+
+    /**
+     * [threads] 个线程一共发送 [EVENTS] 个事件，等待全部分发
+     *
+     * @param sender 返回发送一个事件的函数，每个事件分发时 countDown
+     */
+    private fun sendConcurrently(threads: Int, sender: (CountDownLatch) -> () -> Unit) {
+        val done = CountDownLatch(EVENTS)
+        val send = sender(done)
+        val start = CountDownLatch(1)
+        val workers = List(threads) {
+            Thread {
+                start.await()
+                repeat(EVENTS / threads) { send() }
+            }.apply { start() }
+        }
+        start.countDown()
+        workers.forEach { it.join() }
+        assertEquals(true, done.await(30, TimeUnit.SECONDS))
+    }
+
+    private companion object {
+        const val EVENTS = 200_000
+        val EVENT = Any()
+    }
+}
@@ -0,0 +1,71 @@
+package com.lwjlol.liveeventbus
+
+import org.junit.Assert.assertEquals
+import org.junit.Test
+
+class EventSequencerTest {
+    private val scheduler = FakeScheduler()
+    private val delivered = ArrayList<Any>()
+
+    @Test
+    fun backgroundEventsAreDeliveredBeforeLaterMainThreadEvent() {
+        val sequencer = EventSequencer(scheduler) { event, _ -> delivered.add(event) }
+        scheduler.onMainThread = false
+        sequencer.offer("a", true, false)
+        sequencer.offer(1, true, false)
+        assertEquals(emptyList<Any>(), delivered)
+        assertEquals(1, scheduler.pendingCount)
+
+        scheduler.onMainThread = true
+        sequencer.offer("b", true, false)
+        assertEquals(listOf<Any>("a", 1, "b"), delivered)
+        // 已经 post 的 drain 没有事件可分发
+        scheduler.runPending()
+        assertEquals(listOf<Any>("a", 1, "b"), delivered)
+    }
+
+    @Test
+    fun postedEventsWaitForTheMainLoop() {
+        val sequencer = EventSequencer(scheduler) { event, _ -> delivered.add(event) }
+        sequencer.offer("a", true, true)
+        sequencer.offer("b", true, true)
+        assertEquals(emptyList<Any>(), delivered)
+        assertEquals(1, scheduler.pendingCount)
+        scheduler.runPending()
+        assertEquals(listOf<Any>("a", "b"), delivered)
+    }
+
+    @Test
+    fun eventsSentFromCallbackAreQueuedAfterCurrentEvent() {
+        lateinit var sequencer: EventSequencer
+        sequencer = EventSequencer(scheduler) { event, _ ->
+            delivered.add(event)
+            if (event == "a") {
+                sequencer.offer("c", true, false)
+                delivered.add("a-end")
+            }
+        }
+        sequencer.offerAll(arrayOf("a", "b"), booleanArrayOf(true, false), 2, false)
+        assertEquals(listOf<Any>("a", "a-end", "b", "c"), delivered)
+    }
+
+    @Test
+    fun queueGrowsWithoutLosingOrderOrStickiness() {
+        val stickies = ArrayList<Boolean>()
+        val sequencer = EventSequencer(scheduler) { event, sticky ->
+            delivered.add(event)
+            stickies.add(sticky)
+        }
+        scheduler.onMainThread = false
+        // 先出队一部分，让 head 不在 0，再扩容
+        repeat(10) { sequencer.offer(it, it % 3 == 0, false) }
+        scheduler.onMainThread = true
+        scheduler.runPending()
+        scheduler.onMainThread = false
+        repeat(100) { sequencer.offer(10 + it, (10 + it) % 3 == 0, false) }
+        scheduler.onMainThread = true
+        scheduler.runPending()
+        assertEquals((0 until 110).toList(), delivered)
+        assertEquals((0 until 110).map { it % 3 == 0 }, stickies)
+    }
+}
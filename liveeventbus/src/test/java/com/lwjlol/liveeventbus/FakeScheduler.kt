@@ -0,0 +1,73 @@
+package com.lwjlol.liveeventbus
+
+/**
+ * 手动推进时间的 [MainScheduler]，所有任务都在调用 [advanceBy]/[frame] 的线程执行，默认当前线程视为主线程
+ */
+internal class FakeScheduler : MainScheduler {
+    private class Task(val runnable: Runnable, val time: Long, val order: Long)
+
+    private val tasks = ArrayList<Task>()
+    private val frameTasks = ArrayList<Runnable>()
+    private var now = 0L
+    private var order = 0L
+
+    val pendingCount: Int
+        get() = tasks.size
+
+    val pendingFrameCount: Int
+        get() = frameTasks.size
+
+    /**
+     * false 时模拟在子线程调用
+     */
+    var onMainThread = true
+
+    override fun isMainThread() = onMainThread
+
+    override fun post(task: Runnable) {
+        postDelayed(task, 0)
+    }
+
+    override fun postDelayed(task: Runnable, delayMillis: Long) {
+        tasks.add(Task(task, now + delayMillis, order++))
+    }
+
+    override fun remove(task: Runnable) {
+        tasks.removeAll { it.runnable === task }
+    }
+
+    override fun uptimeMillis() = now
+
+    override fun postFrame(task: Runnable) {
+        frameTasks.add(task)
+    }
+
+    /**
+     * 执行一帧：只执行这一帧开始之前 post 的帧回调，回调中 post 的在下一帧执行
+     */
+    fun frame() {
+        val frame = ArrayList(frameTasks)
+        frameTasks.clear()
+        for (task in frame) {
+            task.run()
+        }
+    }
+
+    /**
+     * 按时间顺序执行到期的任务，执行期间新增的到期任务也会执行
+     */
+    fun advanceBy(millis: Long) {
+        val target = now + millis
+        while (true) {
+            val next = tasks.filter { it.time <= target }.minWithOrNull(compareBy<Task>({ it.time }, { it.order })) ?: break
+            tasks.remove(next)
+            now = maxOf(now, next.time)
+            next.runnable.run()
+        }
+        now = target
+    }
+
+    fun runPending() {
+        advanceBy(0)
+    }
+}
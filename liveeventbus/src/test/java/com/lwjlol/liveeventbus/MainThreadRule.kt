@@ -0,0 +1,22 @@
+package com.lwjlol.liveeventbus
+
+import androidx.arch.core.executor.testing.InstantTaskExecutorRule
+import org.junit.runner.Description
+
+/**
+ * 测试线程视为主线程：[LiveData][androidx.lifecycle.LiveData] 交给父类，
+ * [EventLiveData] 的主线程判断和 post 交给 [scheduler]
+ */
+class MainThreadRule : InstantTaskExecutorRule() {
+    internal val scheduler = FakeScheduler()
+
+    override fun starting(description: Description) {
+        super.starting(description)
+        EventLiveData.mainScheduler = scheduler
+    }
+
+    override fun finished(description: Description) {
+        EventLiveData.mainScheduler = MainScheduler
+        super.finished(description)
+    }
+}
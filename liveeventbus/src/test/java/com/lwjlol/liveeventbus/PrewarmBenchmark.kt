@@ -0,0 +1,93 @@
+package com.lwjlol.liveeventbus
+
+import androidx.lifecycle.Observer
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+/**
+ * 第一次订阅并发送一个事件类型在主线程的耗时：没有预热的类型需要在主线程创建两个通道，
+ * 预热过的类型直接使用后台线程创建好的通道。
+ * 每个类型只有第一次是冷的，所以用不同的 ClassLoader 加载 [TemplateEvent] 得到 [TYPES] 个互不相同的类型，取中位数。
+ */
+class PrewarmBenchmark {
+    @get:Rule
+    val main = MainThreadRule()
+
+    class TemplateEvent
+
+    private class CopyLoader(private val bytes: ByteArray) : ClassLoader(CopyLoader::class.java.classLoader) {
+        fun define(): Class<*> = defineClass(TemplateEvent::class.java.name, bytes, 0, bytes.size)
+    }
+
+    @Before
+    fun setUp() {
+        assumeBenchmark()
+    }
+
+    @Test
+    fun firstObserveAndSend() {
+        val bus = LiveEventBus.instance
+        val executor = Executors.newSingleThreadExecutor()
+        val defaultExecutor = bus.backgroundExecutor
+        bus.backgroundExecutor = executor
+        try {
+            measure(bus, executor)
+        } finally {
+            bus.backgroundExecutor = defaultExecutor
+            executor.shutdownNow()
+        }
+    }
+
+    private fun measure(bus: LiveEventBus, executor: ExecutorService) {
+        bus.init(TYPES * 4)
+        val owner = TestOwner()
+        // 预热订阅和发送的代码路径，之后只剩每个类型第一次使用的开销
+        firstUseNanos(owner, newTypes(TYPES))
+
+        val cold = firstUseNanos(owner, newTypes(TYPES))
+
+        val types = newTypes(TYPES)
+        bus.prewarm(types)
+        executor.submit { }.get(10, TimeUnit.SECONDS)
+        val prewarmed = firstUseNanos(owner, types)
+
+        report(
+            "Prewarm first observe+send",
+            "types" to TYPES,
+            "coldMedianMicros" to "%.1f".format(cold[TYPES / 2] / 1e3),
+            "prewarmedMedianMicros" to "%.1f".format(prewarmed[TYPES / 2] / 1e3)
+        )
+    }
+
+    private fun newTypes(count: Int): List<Class<*>> {
+        val path = TemplateEvent::class.java.name.replace('.', '/') + ".class"
+        val bytes = TemplateEvent::class.java.classLoader!!.getResourceAsStream(path)!!.use { it.readBytes() }
+        return List(count) { CopyLoader(bytes).define() }
+    }
+
+    /**
+     * @return 每个类型第一次订阅和发送的纳秒数，升序
+     */
+    private fun firstUseNanos(owner: TestOwner, types: List<Class<*>>): LongArray {
+        val events = types.map { it.getDeclaredConstructor().newInstance() }
+        val nanos = LongArray(types.size)
+        for (i in types.indices) {
+            @Suppress("UNCHECKED_CAST")
+            val clazz = types[i] as Class<Any>
+            val start = System.nanoTime()
+            LiveEventBus.instance.on(clazz).observe(owner, observer = Observer { })
+            LiveEventBus.instance.send(events[i])
+            nanos[i] = System.nanoTime() - start
+        }
+        nanos.sort()
+        return nanos
+    }
+
+    private companion object {
+        const val TYPES = 200
+    }
+}
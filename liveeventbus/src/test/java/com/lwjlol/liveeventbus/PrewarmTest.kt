@@ -0,0 +1,50 @@
+package com.lwjlol.liveeventbus
+
+import org.junit.After
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import java.util.concurrent.Executor
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+class PrewarmTest {
+    @get:Rule
+    val main = MainThreadRule()
+
+    private class PrewarmedEvent
+
+    private lateinit var executor: ExecutorService
+    private lateinit var defaultExecutor: Executor
+
+    @Before
+    fun setUp() {
+        executor = Executors.newSingleThreadExecutor()
+        defaultExecutor = LiveEventBus.instance.backgroundExecutor
+        LiveEventBus.instance.backgroundExecutor = executor
+    }
+
+    @After
+    fun tearDown() {
+        LiveEventBus.instance.backgroundExecutor = defaultExecutor
+        executor.shutdownNow()
+    }
+
+    @Test
+    fun prewarmedChannelIsTheOneUsedOnTheMainThread() {
+        val bus = LiveEventBus.instance
+        bus.prewarm(listOf(PrewarmedEvent::class.java))
+        // 同一个线程上排在预热之后，拿到的是预热创建的通道
+        val prewarmed = executor.submit<Pair<EventLiveData<PrewarmedEvent>, EventLiveData<PrewarmedEvent>>> {
+            bus.on(PrewarmedEvent::class.java).channels()
+        }.get(10, TimeUnit.SECONDS)
+
+        val channels = bus.on(PrewarmedEvent::class.java).channels()
+        assertSame(prewarmed.first, channels.first)
+        assertSame(prewarmed.second, channels.second)
+        assertTrue(!prewarmed.first.sticky && prewarmed.second.sticky)
+    }
+}
@@ -0,0 +1,104 @@
+package com.lwjlol.liveeventbus
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class RateLimiterTest {
+    private val scheduler = FakeScheduler()
+    private val emitted = ArrayList<Any>()
+    private val emittedSticky = ArrayList<Boolean>()
+
+    private fun limiter(policy: RatePolicy) = RateLimiter(policy, scheduler) { event, sticky ->
+        emitted.add(event)
+        emittedSticky.add(sticky)
+    }
+
+    @Test
+    fun distinctUntilChanged_dropsEqualEvents() {
+        val limiter = limiter(RatePolicy.DistinctUntilChanged)
+        assertTrue(limiter.offer("a", true))
+        assertFalse(limiter.offer("a", true))
+        assertTrue(limiter.offer("b", true))
+        assertTrue(limiter.offer("a", true))
+    }
+
+    @Test
+    fun distinctUntilChanged_tracksStickyAndNonStickySeparately() {
+        val limiter = limiter(RatePolicy.DistinctUntilChanged)
+        assertTrue(limiter.offer("a", true))
+        assertTrue(limiter.offer("a", false))
+        assertFalse(limiter.offer("a", false))
+        assertFalse(limiter.offer("a", true))
+    }
+
+    @Test
+    fun throttleLatest_emitsFirstImmediatelyAndLatestAtWindowEnd() {
+        val limiter = limiter(RatePolicy.ThrottleLatest(100))
+        scheduler.advanceBy(1000)
+        assertTrue(limiter.offer(1, true))
+        assertFalse(limiter.offer(2, true))
+        assertFalse(limiter.offer(3, true))
+        scheduler.advanceBy(99)
+        assertEquals(emptyList<Any>(), emitted)
+        scheduler.advanceBy(1)
+        assertEquals(listOf<Any>(3), emitted)
+        // 窗口内刚发过，下一个继续等到窗口结束
+        assertFalse(limiter.offer(4, true))
+        scheduler.advanceBy(100)
+        assertEquals(listOf<Any>(3, 4), emitted)
+        scheduler.advanceBy(100)
+        assertTrue(limiter.offer(5, true))
+    }
+
+    @Test
+    fun debounce_emitsLastAfterQuietPeriod() {
+        val limiter = limiter(RatePolicy.Debounce(50))
+        assertFalse(limiter.offer(1, true))
+        scheduler.advanceBy(30)
+        assertFalse(limiter.offer(2, true))
+        scheduler.advanceBy(30)
+        assertEquals(emptyList<Any>(), emitted)
+        scheduler.advanceBy(20)
+        assertEquals(listOf<Any>(2), emitted)
+        assertEquals(0, scheduler.pendingCount)
+    }
+
+    @Test
+    fun throttleLatest_keepsPendingEventPerStickyFlag() {
+        val limiter = limiter(RatePolicy.ThrottleLatest(100))
+        scheduler.advanceBy(1000)
+        assertTrue(limiter.offer("s1", true))
+        assertTrue(limiter.offer("n1", false))
+        assertFalse(limiter.offer("s2", true))
+        assertFalse(limiter.offer("n2", false))
+        scheduler.advanceBy(100)
+        // 非粘性的事件不会替换粘性通道暂存的事件
+        assertEquals(listOf<Any>("s2", "n2"), emitted)
+        assertEquals(listOf(true, false), emittedSticky)
+    }
+
+    @Test
+    fun debounce_keepsPendingEventPerStickyFlag() {
+        val limiter = limiter(RatePolicy.Debounce(50))
+        assertFalse(limiter.offer("s", true))
+        scheduler.advanceBy(30)
+        assertFalse(limiter.offer("n", false))
+        scheduler.advanceBy(20)
+        // 非粘性的事件不会推迟粘性通道
+        assertEquals(listOf<Any>("s"), emitted)
+        scheduler.advanceBy(30)
+        assertEquals(listOf<Any>("s", "n"), emitted)
+        assertEquals(listOf(true, false), emittedSticky)
+    }
+
+    @Test
+    fun cancel_dropsPendingEvent() {
+        val limiter = limiter(RatePolicy.Debounce(50))
+        limiter.offer(1, true)
+        limiter.cancel()
+        scheduler.advanceBy(100)
+        assertEquals(emptyList<Any>(), emitted)
+    }
+}
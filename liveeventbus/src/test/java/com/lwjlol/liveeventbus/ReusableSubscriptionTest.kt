@@ -0,0 +1,57 @@
+package com.lwjlol.liveeventbus
+
+import androidx.lifecycle.Observer
+import org.junit.Assert.assertEquals
+import org.junit.Rule
+import org.junit.Test
+
+class ReusableSubscriptionTest {
+    @get:Rule
+    val main = MainThreadRule()
+
+    private class UnbindEvent(val id: Int)
+
+    private class RebindEvent(val id: Int)
+
+    private val owner = TestOwner()
+    private val received = ArrayList<Int>()
+
+    @Test
+    fun unsubscribeOffMainThread_unbindsOnMainThread() {
+        val bus = LiveEventBus.instance
+        val subscription = bus.on(UnbindEvent::class.java).observeReusable(owner, observer = Observer {
+            received.add(it.id)
+        })
+        subscription.bind("item")
+        bus.send(UnbindEvent(1), sticky = false)
+
+        main.scheduler.onMainThread = false
+        subscription.unsubscribe()
+        main.scheduler.onMainThread = true
+        assertEquals(null, subscription.key)
+        main.scheduler.runPending()
+
+        bus.send(UnbindEvent(2), sticky = false)
+        assertEquals(listOf(1), received)
+    }
+
+    @Test
+    fun bindAfterOffMainUnsubscribe_appliesUnbindFirst() {
+        val bus = LiveEventBus.instance
+        val subscription = bus.on(RebindEvent::class.java).observeReusable(owner, observer = Observer {
+            received.add(it.id)
+        })
+        subscription.bind("first")
+
+        main.scheduler.onMainThread = false
+        subscription.unsubscribe()
+        main.scheduler.onMainThread = true
+        // 排队的解绑还没有执行，bind 先执行它再绑定
+        subscription.bind("second")
+        main.scheduler.runPending()
+
+        bus.send(RebindEvent(1), sticky = false)
+        assertEquals("second", subscription.key)
+        assertEquals(listOf(1), received)
+    }
+}
@@ -0,0 +1,42 @@
+package com.lwjlol.liveeventbus
+
+import androidx.lifecycle.Observer
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Rule
+import org.junit.Test
+
+class SendTopicTest {
+    @get:Rule
+    val main = MainThreadRule()
+
+    private class ConvertedEvent(val topic: String)
+
+    private var interceptorCalls = 0
+    private val interceptor = EventInterceptor { event, _ ->
+        interceptorCalls++
+        if (event is TopicEvent && event.topic == TOPIC) ConvertedEvent(event.topic) else event
+    }
+
+    @After
+    fun tearDown() {
+        LiveEventBus.instance.removeInterceptor(interceptor)
+    }
+
+    @Test
+    fun interceptorReplacingTopicEvent_runsOnce() {
+        val bus = LiveEventBus.instance
+        val received = ArrayList<String>()
+        bus.on(ConvertedEvent::class.java).observe(TestOwner(), observer = Observer {
+            received.add(it.topic)
+        })
+        bus.addInterceptor(interceptor)
+        bus.sendTopic(TOPIC)
+        assertEquals(1, interceptorCalls)
+        assertEquals(listOf(TOPIC), received)
+    }
+
+    private companion object {
+        const val TOPIC = "converted/topic"
+    }
+}
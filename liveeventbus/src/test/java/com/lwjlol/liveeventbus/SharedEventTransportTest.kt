@@ -0,0 +1,205 @@
+package com.lwjlol.liveeventbus
+
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import java.io.File
+import java.nio.ByteBuffer
+import java.util.concurrent.TimeUnit
+
+/**
+ * 两个 JVM 进程通过同一个文件通信：本进程读，[SharedEventTransportWriter] 在子进程写
+ */
+class SharedEventTransportTest {
+    private lateinit var file: File
+
+    @Before
+    fun setUp() {
+        file = File.createTempFile("event_bus", ".ring")
+        file.delete()
+    }
+
+    @After
+    fun tearDown() {
+        file.delete()
+    }
+
+    @Test
+    fun recordsWrittenByAnotherProcessArriveIntactAndInOrder() {
+        val received = ArrayList<Int>(RECORD_COUNT)
+        val corrupted = ArrayList<Int>()
+        val transport = SharedEventTransport(file, CAPACITY)
+        transport.start(object : SharedEventTransport.Listener {
+            override fun onRecord(payload: ByteBuffer, flags: Int) {
+                val sequence = payload.int
+                if (flags != sequence % 2 || !SharedEventTransportWriter.verify(sequence, payload)) {
+                    corrupted.add(sequence)
+                }
+                synchronized(received) {
+                    received.add(sequence)
+                }
+            }
+        })
+        val process = startWriter(RECORD_COUNT)
+        assertTrue(process.waitFor(60, TimeUnit.SECONDS))
+        assertEquals(0, process.exitValue())
+
+        val deadline = System.currentTimeMillis() + 10_000
+        while (System.currentTimeMillis() < deadline) {
+            val done = synchronized(received) {
+                received.lastOrNull() == RECORD_COUNT - 1
+            }
+            if (done) break
+            Thread.sleep(10)
+        }
+        transport.close()
+
+        val sequences = synchronized(received) { ArrayList(received) }
+        assertEquals(emptyList<Int>(), corrupted)
+        for (i in 1 until sequences.size) {
+            assertTrue("out of order at $i", sequences[i] > sequences[i - 1])
+        }
+        // 读方只有在落后超过缓冲区时才会丢弃，每条丢弃的记录都要计数
+        assertEquals(RECORD_COUNT.toLong(), transport.droppedCount + sequences.size)
+    }
+
+    @Test
+    fun failedRecordIsCountedAndReadingContinues() {
+        val reader = SharedEventTransport(file, CAPACITY)
+        val received = ArrayList<Int>()
+        val failures = ArrayList<RuntimeException>()
+        reader.start(object : SharedEventTransport.Listener {
+            override fun onRecord(payload: ByteBuffer, flags: Int) {
+                val sequence = payload.int
+                if (sequence == 1) throw IllegalStateException("corrupted")
+                synchronized(received) {
+                    received.add(sequence)
+                }
+            }
+
+            override fun onRecordFailed(e: RuntimeException) {
+                synchronized(received) {
+                    failures.add(e)
+                }
+            }
+        })
+        val process = startWriter(3)
+        assertTrue(process.waitFor(60, TimeUnit.SECONDS))
+        assertEquals(0, process.exitValue())
+        val deadline = System.currentTimeMillis() + 10_000
+        while (synchronized(received) { received.size + failures.size } < 3 &&
+            System.currentTimeMillis() < deadline
+        ) {
+            Thread.sleep(10)
+        }
+        reader.close()
+        assertEquals(listOf(0, 2), received)
+        assertEquals(1, failures.size)
+        assertEquals(1L, reader.droppedCount)
+    }
+
+    @Test
+    fun readerSkipsItsOwnRecords() {
+        val transport = SharedEventTransport(file, CAPACITY)
+        var count = 0
+        transport.start(object : SharedEventTransport.Listener {
+            override fun onRecord(payload: ByteBuffer, flags: Int) {
+                count++
+            }
+        })
+        repeat(100) {
+            assertTrue(transport.send(SharedEventTransportWriter.payload(it, ByteBuffer.allocate(256))))
+        }
+        Thread.sleep(200)
+        transport.close()
+        assertEquals(0, count)
+    }
+
+    @Test
+    fun stopEndsPollingAndStartResumesFromCurrentPosition() {
+        val transport = SharedEventTransport(file, CAPACITY)
+        val listener = object : SharedEventTransport.Listener {
+            override fun onRecord(payload: ByteBuffer, flags: Int) {}
+        }
+        transport.start(listener)
+        assertTrue(transport.isReading)
+        transport.stop()
+        assertFalse(transport.isReading)
+        transport.start(listener)
+        transport.close()
+        assertFalse(transport.isReading)
+    }
+
+    @Test
+    fun oversizedPayloadIsRejected() {
+        val transport = SharedEventTransport(file, CAPACITY)
+        assertFalse(transport.send(ByteBuffer.allocate(transport.maxPayloadSize + 1)))
+        assertTrue(transport.send(ByteBuffer.allocate(transport.maxPayloadSize)))
+        transport.close()
+    }
+
+    private fun startWriter(count: Int): Process = ProcessBuilder(
+        File(System.getProperty("java.home"), "bin/java").path,
+        "-cp",
+        System.getProperty("java.class.path"),
+        SharedEventTransportWriter::class.java.name,
+        file.path,
+        count.toString()
+    ).inheritIO().start()
+
+    private companion object {
+        // 小于总写入量，覆盖绕回和 padding
+        const val CAPACITY = 64 * 1024
+        const val RECORD_COUNT = 100_000
+    }
+}
+
+/**
+ * 子进程入口：`<file> <count>`，写入 count 条长度不同的记录
+ */
+object SharedEventTransportWriter {
+    @JvmStatic
+    fun main(args: Array<String>) {
+        val transport = SharedEventTransport(File(args[0]))
+        val count = args[1].toInt()
+        val buffer = ByteBuffer.allocate(256)
+        for (sequence in 0 until count) {
+            check(transport.send(payload(sequence, buffer), sequence % 2))
+            // 读方每轮最多复制一个缓冲区，写得太快时让出一下，避免只测到丢弃
+            if (sequence % 256 == 0) {
+                Thread.sleep(1)
+            }
+        }
+        transport.close()
+    }
+
+    /**
+     * `[sequence][length][length 个字节]`，每个字节由 sequence 和下标决定
+     */
+    fun payload(sequence: Int, buffer: ByteBuffer): ByteBuffer {
+        val length = sequence % 97
+        buffer.clear()
+        buffer.putInt(sequence)
+        buffer.putInt(length)
+        for (i in 0 until length) {
+            buffer.put((sequence + i).toByte())
+        }
+        buffer.flip()
+        return buffer
+    }
+
+    /**
+     * @param payload position 在 sequence 之后
+     */
+    fun verify(sequence: Int, payload: ByteBuffer): Boolean {
+        val length = payload.int
+        if (length != sequence % 97 || payload.remaining() != length) return false
+        for (i in 0 until length) {
+            if (payload.get() != (sequence + i).toByte()) return false
+        }
+        return true
+    }
+}
@@ -0,0 +1,106 @@
+package com.lwjlol.liveeventbus
+
+import androidx.lifecycle.Observer
+import org.junit.Assert.assertEquals
+import org.junit.Rule
+import org.junit.Test
+import java.util.concurrent.CountDownLatch
+import kotlin.concurrent.thread
+
+class StateChannelTest {
+    @get:Rule
+    val main = MainThreadRule()
+
+    private val owner = TestOwner()
+    private val received = ArrayList<Int>()
+
+    private fun channel(initial: Int = 0) = StateChannel(initial, main.scheduler).also {
+        it.observe(owner, observer = Observer { value -> received.add(value) })
+    }
+
+    @Test
+    fun update_retriesWhenAnotherWriterWins() {
+        val channel = channel()
+        var calls = 0
+        val result = channel.update {
+            calls++
+            // 第一次计算期间被其他写入抢先，CAS 失败后基于新值重新计算
+            if (calls == 1) channel.set(10)
+            it + 1
+        }
+        assertEquals(2, calls)
+        assertEquals(11, result)
+        assertEquals(11, channel.value)
+    }
+
+    @Test
+    fun update_concurrentIncrementsAreNotLost() {
+        val channel = StateChannel(0, main.scheduler)
+        main.scheduler.onMainThread = false
+        val start = CountDownLatch(1)
+        val threads = List(THREADS) {
+            thread {
+                start.await()
+                repeat(INCREMENTS) {
+                    channel.update { it + 1 }
+                }
+            }
+        }
+        start.countDown()
+        threads.forEach { it.join() }
+        main.scheduler.onMainThread = true
+        assertEquals(THREADS * INCREMENTS, channel.value)
+    }
+
+    @Test
+    fun equalValueIsNotDispatched() {
+        val channel = channel(1)
+        main.scheduler.frame()
+        assertEquals(listOf(1), received)
+        channel.set(1)
+        assertEquals(0, main.scheduler.pendingFrameCount)
+        main.scheduler.frame()
+        assertEquals(listOf(1), received)
+    }
+
+    @Test
+    fun dispatchesLatestValueOncePerFrame() {
+        val channel = channel()
+        main.scheduler.frame()
+        channel.set(1)
+        channel.set(2)
+        channel.update { it + 1 }
+        assertEquals(1, main.scheduler.pendingFrameCount)
+        main.scheduler.frame()
+        assertEquals(listOf(0, 3), received)
+    }
+
+    @Test
+    fun changeAndRevertWithinFrameIsNotDispatched() {
+        val channel = channel(5)
+        main.scheduler.frame()
+        channel.set(6)
+        channel.set(5)
+        main.scheduler.frame()
+        assertEquals(listOf(5), received)
+        assertEquals(0, main.scheduler.pendingFrameCount)
+    }
+
+    @Test
+    fun offMainUpdatePostsBeforeFrame() {
+        val channel = channel()
+        main.scheduler.frame()
+        main.scheduler.onMainThread = false
+        channel.set(1)
+        main.scheduler.onMainThread = true
+        assertEquals(0, main.scheduler.pendingFrameCount)
+        main.scheduler.runPending()
+        main.scheduler.frame()
+        assertEquals(listOf(0, 1), received)
+    }
+
+    private companion object {
+        const val THREADS = 4
+        const val INCREMENTS = 10_000
+    }
+}
@@ -0,0 +1,157 @@
+package com.lwjlol.liveeventbus
+
+import androidx.collection.ArrayMap
+import androidx.lifecycle.Lifecycle
+import androidx.lifecycle.LifecycleObserver
+import androidx.lifecycle.LifecycleOwner
+import androidx.lifecycle.MutableLiveData
+import androidx.lifecycle.Observer
+import androidx.lifecycle.OnLifecycleEvent
+import org.junit.Assert.assertEquals
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+
+/**
+ * 10k 次 `Bus.observe` 保留的内存：两个通道的订阅槽位、[OwnerHook][EventLiveData]、返回的 [Subscription] 句柄，
+ * 以及 owner 的 Lifecycle 中登记的观察者，不包括 observer、owner 和 ownerKey 字符串本身（它们由调用方持有）。
+ * 和同一个 harness 中改造前的实现（每次订阅一个 KeyWrapper、一个包装 Observer、LiveData 的 ObserverWrapper
+ * 和一个销毁监听）对比。通过多次 GC 之后的堆占用差值计算。
+ */
+class SubscriptionMemoryBenchmark {
+    @get:Rule
+    val main = MainThreadRule()
+
+    @Before
+    fun setUp() {
+        assumeBenchmark()
+    }
+
+    private class OneKeyEachEvent
+
+    private class SharedKeyEvent
+
+    @Test
+    fun bytesPerObserve() {
+        for ((name, clazz, keys) in listOf(
+            Triple("one owner and key each", OneKeyEachEvent::class.java, COUNT),
+            Triple("shared owner and key", SharedKeyEvent::class.java, 1)
+        )) {
+            val observers = List(COUNT) { Observer<Any> { } }
+            val owners = List(keys) { TestOwner() }
+            val keyNames = List(keys) { "owner$it" }
+
+            @Suppress("UNCHECKED_CAST")
+            val bus = LiveEventBus.instance.on(clazz as Class<Any>)
+            // 通道在第一次订阅时创建，不计入
+            val warmup = TestOwner()
+            bus.observe(warmup, observer = Observer { })
+            warmup.state = Lifecycle.State.DESTROYED
+            val subscriptions = ArrayList<Subscription>(COUNT)
+            val busBytes = measureRetainedBytes {
+                for (i in 0 until COUNT) {
+                    subscriptions.add(bus.observe(owners[i % keys], keyNames[i % keys], observer = observers[i]))
+                }
+            }
+
+            val liveData = BaselineEventLiveData<Any>(false)
+            val stickyLiveData = BaselineEventLiveData<Any>(true)
+            val baselineBytes = measureRetainedBytes {
+                for (i in 0 until COUNT) {
+                    liveData.observe(owners[i % keys], keyNames[i % keys], observers[i])
+                    stickyLiveData.observe(owners[i % keys], keyNames[i % keys], observers[i])
+                }
+            }
+
+            assertEquals(COUNT, subscriptions.size)
+            assertEquals(keys, liveData.keyCount)
+            report(
+                "Bus.observe $name",
+                "subscriptions" to COUNT,
+                "bytesPerObserve" to busBytes / COUNT,
+                "baselineBytesPerObserve" to baselineBytes / COUNT
+            )
+            for (owner in owners) {
+                owner.state = Lifecycle.State.DESTROYED
+            }
+        }
+    }
+
+    private inline fun measureRetainedBytes(allocate: () -> Unit): Long {
+        val before = usedMemory()
+        allocate()
+        return usedMemory() - before
+    }
+
+    private fun usedMemory(): Long {
+        val runtime = Runtime.getRuntime()
+        var used = Long.MAX_VALUE
+        repeat(5) {
+            System.gc()
+            Thread.sleep(20)
+            used = minOf(used, runtime.totalMemory() - runtime.freeMemory())
+        }
+        return used
+    }
+
+    private companion object {
+        const val COUNT = 10_000
+    }
+}
+
+/**
+ * 改造前 [EventLiveData] 的订阅路径，只保留 observe 分配的对象：KeyWrapper、按 key 分组的列表和状态表、
+ * 包装 Observer 以及销毁监听，订阅交给 [androidx.lifecycle.LiveData.observe]
+ */
+private class BaselineEventLiveData<T>(private val sticky: Boolean) : MutableLiveData<T>() {
+    private val tempValueMap = ArrayMap<String, Any?>(2)
+    private val isObservedMap = ArrayMap<String, Boolean>(2)
+    private val keyMap = ArrayMap<String, ArrayList<KeyWrapper>>(2)
+
+    val keyCount: Int
+        get() = keyMap.size
+
+    fun observe(owner: LifecycleOwner, key: String, observer: Observer<in T>) {
+        val keyWrapper = KeyWrapper(key, owner, observer)
+        keyMap.getOrPut(key) { ArrayList(4) }.add(keyWrapper)
+        owner.lifecycle.addObserver(OnDestroyLifecycleObserver(keyWrapper, this))
+        isObservedMap[key] = true
+        if (tempValueMap[key] == null) {
+            tempValueMap[key] = if (!sticky || value == null) UNSET else value
+        }
+        super.observe(owner, Observer<T> {
+            if (tempValueMap[key] === UNSET) return@Observer
+            observer.onChanged(it)
+            tempValueMap[key] = UNSET
+        })
+    }
+
+    private fun remove(keyWrapper: KeyWrapper) {
+        keyMap[keyWrapper.key]?.remove(keyWrapper)
+        if (keyMap[keyWrapper.key].isNullOrEmpty()) {
+            keyMap.remove(keyWrapper.key)
+            tempValueMap.remove(keyWrapper.key)
+            isObservedMap.remove(keyWrapper.key)
+        }
+    }
+
+    private class OnDestroyLifecycleObserver<T>(
+        private val keyWrapper: KeyWrapper,
+        private val liveData: BaselineEventLiveData<T>
+    ) : LifecycleObserver {
+        @OnLifecycleEvent(Lifecycle.Event.ON_DESTROY)
+        fun onDestroy() {
+            liveData.remove(keyWrapper)
+        }
+    }
+
+    data class KeyWrapper(
+        val key: String,
+        val lifecycleOwner: LifecycleOwner?,
+        val observer: Observer<*>?
+    )
+
+    private companion object {
+        val UNSET = Any()
+    }
+}
@@ -0,0 +1,197 @@
+package com.lwjlol.liveeventbus
+
+import androidx.lifecycle.Lifecycle
+import androidx.lifecycle.Observer
+import com.lwjlol.liveeventbus.SubscriptionTable.Companion.DEFAULT_PRIORITY
+import com.lwjlol.liveeventbus.SubscriptionTable.Companion.FLAG_ACTIVE
+import com.lwjlol.liveeventbus.SubscriptionTable.Companion.NO_SLOT
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class SubscriptionTableTest {
+    private val table = SubscriptionTable<String>()
+
+    private fun observer() = Observer<String> { }
+
+    private fun add(
+        observer: Observer<String> = observer(),
+        key: String = "key",
+        active: Boolean = true,
+        priority: Int = DEFAULT_PRIORITY
+    ): Int = table.add(
+        observer,
+        table.acquireKey(key),
+        if (active) FLAG_ACTIVE else 0,
+        null,
+        priority,
+        Lifecycle.State.STARTED,
+        null
+    )
+
+    private fun order() = IntArray(table.orderSize) { table.order[it] }.filter { it != NO_SLOT }
+
+    private fun activeSlots() = table.activeSlots().copyOf(table.activeSlotCount).toList()
+
+    @Test
+    fun remove_reusesSlotAndBumpsGeneration() {
+        val a = add()
+        val b = add()
+        val generation = table.subGenerations[a]
+        assertTrue(table.isAlive(a, generation))
+
+        table.remove(a)
+        assertFalse(table.isAlive(a, generation))
+        assertEquals(1, table.subscriptionCount)
+
+        // 空闲链表复用同一个槽位，旧句柄仍然无效
+        val c = add()
+        assertEquals(a, c)
+        assertEquals(generation + 1, table.subGenerations[c])
+        assertFalse(table.isAlive(a, generation))
+        assertTrue(table.isAlive(c, generation + 1))
+        assertEquals(2, table.size)
+        assertTrue(table.isAlive(b, table.subGenerations[b]))
+    }
+
+    @Test
+    fun remove_twiceIsNoOp() {
+        val a = add()
+        table.remove(a)
+        table.remove(a)
+        assertEquals(0, table.subscriptionCount)
+        // 空闲链表中只有一个槽位
+        assertEquals(a, add())
+        assertEquals(1, add())
+    }
+
+    @Test
+    fun order_higherPriorityFirstThenRegistrationOrder() {
+        val a = add()
+        val b = add(priority = 10)
+        val c = add()
+        val d = add(priority = 10)
+        val e = add(priority = -1)
+        assertEquals(listOf(b, d, a, c, e), order())
+
+        table.remove(d)
+        val f = add(priority = 10)
+        assertEquals(listOf(b, f, a, c, e), order())
+    }
+
+    @Test
+    fun activeSnapshot_containsOnlyActiveSlotsInOrder() {
+        val a = add()
+        val b = add(active = false)
+        val c = add(priority = 1)
+        assertEquals(listOf(c, a), activeSlots())
+
+        table.setActive(b, true)
+        assertEquals(listOf(c, a, b), activeSlots())
+
+        table.setActive(c, false)
+        table.remove(a)
+        assertEquals(listOf(b), activeSlots())
+    }
+
+    @Test
+    fun activeSnapshot_rebuildDoesNotModifyArrayBeingIterated() {
+        val a = add()
+        val b = add()
+        val snapshot = table.activeSlots()
+        val count = table.activeSlotCount
+        table.remove(a)
+        add()
+        table.activeSlots()
+        assertArrayEquals(intArrayOf(a, b), snapshot.copyOf(count))
+        // 遍历旧快照时用 isActive 跳过已删除的订阅
+        assertFalse(table.isActive(a) && table.observers[a] == null)
+    }
+
+    @Test
+    fun activeSnapshot_unchangedWithoutModification() {
+        add()
+        val snapshot = table.activeSlots()
+        assertTrue(snapshot === table.activeSlots())
+    }
+
+    @Test
+    fun unbound_staysInOrderAndSnapshotButIsNotActive() {
+        val a = add()
+        val b = add()
+        val snapshot = table.activeSlots()
+        table.setBound(a, false)
+        assertFalse(table.isActive(a))
+        assertTrue(table.isLifecycleActive(a))
+        // 解绑和重新绑定都不重建快照
+        assertTrue(snapshot === table.activeSlots())
+        assertEquals(listOf(a, b), activeSlots())
+        assertEquals(listOf(a, b), order())
+
+        table.setActive(a, false)
+        table.setActive(a, true)
+        assertFalse(table.isActive(a))
+        table.setBound(a, true)
+        assertTrue(table.isActive(a))
+        assertEquals(listOf(a, b), activeSlots())
+    }
+
+    @Test
+    fun slotOf_followsSameObserverChain() {
+        val observer = observer()
+        val a = add(observer, "a")
+        val b = add(observer, "b")
+        assertTrue(table.slotOf(observer) == a || table.slotOf(observer) == b)
+        table.remove(b)
+        assertEquals(a, table.slotOf(observer))
+        table.remove(a)
+        assertEquals(NO_SLOT, table.slotOf(observer))
+    }
+
+    @Test
+    fun keys_areSharedAndReleasedWithLastSubscription() {
+        val a = add(key = "k")
+        val b = add(key = "k")
+        val keySlot = table.subKeys[a]
+        assertEquals(keySlot, table.subKeys[b])
+        table.keyPending[keySlot] = "pending"
+
+        table.remove(a)
+        assertEquals("k", table.keyNames[keySlot])
+        table.remove(b)
+        assertNull(table.keyNames[keySlot])
+
+        // 释放的 key 槽位被复用并清空
+        val c = add(key = "other")
+        assertEquals(keySlot, table.subKeys[c])
+        assertNull(table.keyPending[keySlot])
+    }
+
+    @Test
+    fun rebindKey_releasesPreviousKey() {
+        val a = add(key = "old")
+        val old = table.subKeys[a]
+        table.rebindKey(a, table.acquireKey("new"))
+        assertEquals("new", table.keyNames[table.subKeys[a]])
+        assertNull(table.keyNames[old])
+    }
+
+    @Test
+    fun grows_keepsAllSlots() {
+        val slots = List(100) { add(key = "key$it", priority = it % 3) }
+        assertEquals(100, table.subscriptionCount)
+        assertEquals(100, activeSlots().size)
+        for (slot in slots) {
+            assertEquals("key$slot", table.keyNames[table.subKeys[slot]])
+        }
+        // 每个优先级内部保持注册顺序
+        val order = order()
+        for (priority in 2 downTo 0) {
+            val group = order.filter { it % 3 == priority }
+            assertEquals(group.sorted(), group)
+        }
+    }
+}
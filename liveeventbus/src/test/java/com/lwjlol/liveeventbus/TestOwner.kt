@@ -0,0 +1,24 @@
+package com.lwjlol.liveeventbus
+
+import androidx.lifecycle.Lifecycle
+import androidx.lifecycle.LifecycleOwner
+import androidx.lifecycle.LifecycleRegistry
+
+/**
+ * 手动切换生命周期的 [LifecycleOwner]，需要配合 [MainThreadRule] 使用
+ */
+internal class TestOwner(state: Lifecycle.State = Lifecycle.State.RESUMED) : LifecycleOwner {
+    private val registry = LifecycleRegistry(this)
+
+    init {
+        registry.currentState = state
+    }
+
+    var state: Lifecycle.State
+        get() = registry.currentState
+        set(value) {
+            registry.currentState = value
+        }
+
+    override fun getLifecycle(): Lifecycle = registry
+}
@@ -0,0 +1,139 @@
+package com.lwjlol.liveeventbus
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.atomic.AtomicLong
+
+class TimerWheelTest {
+    private val fired = CopyOnWriteArrayList<Pair<Any, Long>>()
+
+    @Test
+    fun schedule_computesBucketAndRoundsFromStart() {
+        val now = AtomicLong(1_000)
+        val wheel = TimerWheel(10, 8, { now.get() }) { }
+        // 向上取整到格子：5ms -> 第 1 格
+        wheel.schedule("a", true, 1_005).let {
+            assertEquals(1, it.bucket)
+            assertEquals(0L, it.rounds)
+        }
+        // 正好一圈
+        wheel.schedule("b", true, 1_080).let {
+            assertEquals(0, it.bucket)
+            assertEquals(1L, it.rounds)
+        }
+        // 265ms -> 第 27 格 = 3 圈 + 3
+        wheel.schedule("c", true, 1_265).let {
+            assertEquals(3, it.bucket)
+            assertEquals(3L, it.rounds)
+        }
+        // 已经过期的放到当前格子
+        wheel.schedule("d", true, 900).let {
+            assertEquals(0, it.bucket)
+            assertEquals(0L, it.rounds)
+        }
+    }
+
+    @Test
+    fun schedule_afterIdle_countsRoundsFromCurrentTick() {
+        val now = AtomicLong(0)
+        val wheel = TimerWheel(10, 8, { now.get() }) { }
+        // 空闲时时间前进了 123 格，圈数从当前格开始算
+        now.set(1_230)
+        wheel.schedule("a", true, 1_230 + 85).let {
+            assertEquals(((123 + 9) % 8), it.bucket)
+            assertEquals(1L, it.rounds)
+        }
+    }
+
+    @Test
+    fun expiresOnDueTickAfterRoundsAndNeverEarly() {
+        val now = AtomicLong(0)
+        val wheel = TimerWheel(10, 4, { now.get() }) { events ->
+            for (event in events) {
+                fired.add(event.event to now.get())
+            }
+        }
+        // 跨越多圈，并且落在同一个桶里
+        val dues = longArrayOf(10, 50, 90, 130, 35)
+        for (due in dues) {
+            wheel.schedule(due, true, due)
+        }
+        var time = 0L
+        while (time <= 140) {
+            now.set(time)
+            // 不在格子边界上的时间向后取整到下一格
+            awaitFired(dues.count { (it + 9) / 10 * 10 <= time })
+            for ((event, at) in fired) {
+                assertTrue("$event fired at $at", at >= event as Long)
+            }
+            time += 5
+        }
+        assertEquals(dues.sorted(), fired.map { it.first })
+    }
+
+    @Test
+    fun cancel_removesFromBucket() {
+        val now = AtomicLong(0)
+        val wheel = TimerWheel(10, 4, { now.get() }) { events ->
+            for (event in events) {
+                fired.add(event.event to now.get())
+            }
+        }
+        val a = wheel.schedule("a", true, 20)
+        val b = wheel.schedule("b", true, 20)
+        val c = wheel.schedule("c", true, 60)
+        b.unsubscribe()
+        assertFalse(b.isPending)
+        assertTrue(a.isPending)
+        c.unsubscribe()
+        now.set(100)
+        awaitFired(1)
+        Thread.sleep(50)
+        assertEquals(listOf("a"), fired.map { it.first })
+        assertFalse(a.isPending)
+        assertFalse(c.isPending)
+    }
+
+    @Test
+    fun realClock_longDelaysFireAfterDueTime() {
+        val clock = { System.nanoTime() / 1_000_000 }
+        val wheel = TimerWheel(5, 4, clock) { events ->
+            val time = clock()
+            for (event in events) {
+                fired.add(event.event to time)
+            }
+        }
+        val start = clock()
+        val dues = longArrayOf(3, 17, 45, 90, 130).map { start + it }
+        for (due in dues) {
+            wheel.schedule(due, true, due)
+        }
+        val cancelled = wheel.schedule(-1L, true, start + 60)
+        cancelled.unsubscribe()
+        val deadline = System.currentTimeMillis() + 5_000
+        while (fired.size < dues.size && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5)
+        }
+        Thread.sleep(100)
+        assertEquals(dues, fired.map { it.first })
+        for ((event, at) in fired) {
+            assertTrue("$event fired at $at", at >= event as Long)
+        }
+    }
+
+    /**
+     * 时钟是手动推进的，等待时间轮的线程处理完当前时间之前到期的事件
+     */
+    private fun awaitFired(expectedFired: Int) {
+        val deadline = System.currentTimeMillis() + 2_000
+        while (fired.size < expectedFired && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1)
+        }
+        // 再给线程一格的时间，确认没有提前触发的事件
+        Thread.sleep(15)
+        assertEquals(expectedFired, fired.size)
+    }
+}
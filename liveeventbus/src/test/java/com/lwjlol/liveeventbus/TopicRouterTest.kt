@@ -0,0 +1,75 @@
+package com.lwjlol.liveeventbus
+
+import androidx.lifecycle.Observer
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class TopicRouterTest {
+    private val router = TopicRouter()
+    private val received = ArrayList<String>()
+
+    private fun subscribe(filter: String) =
+        router.subscribe(filter, null, true, Observer { received.add("$filter <- ${it.topic}") })
+
+    private fun matched(topic: String) = router.resolve(topic).map { it.filter }.toSet()
+
+    @Test
+    fun wildcards() {
+        listOf("a/b/c", "a/+/c", "a/#", "#", "a/b", "+/+", "a/b/c/#", "b/#").forEach { subscribe(it) }
+        assertEquals(setOf("a/b/c", "a/+/c", "a/#", "#", "a/b/c/#"), matched("a/b/c"))
+        assertEquals(setOf("a/#", "#", "a/b", "+/+"), matched("a/b"))
+        // # 匹配 0 层
+        assertEquals(setOf("a/#", "#"), matched("a"))
+        assertEquals(setOf("#", "+/+", "b/#"), matched("b/x"))
+    }
+
+    @Test
+    fun dispatch_deliversToEveryMatch() {
+        subscribe("player/+/progress")
+        subscribe("player/#")
+        subscribe("other")
+        router.dispatch(TopicEvent("player/track/progress", 1))
+        assertEquals(
+            setOf("player/+/progress <- player/track/progress", "player/# <- player/track/progress"),
+            received.toSet()
+        )
+    }
+
+    @Test
+    fun cacheIsInvalidatedOnSubscribeAndUnsubscribe() {
+        val a = subscribe("a/+")
+        assertEquals(setOf("a/+"), matched("a/b"))
+        val b = subscribe("a/b")
+        assertEquals(setOf("a/+", "a/b"), matched("a/b"))
+        router.unsubscribe(a)
+        assertEquals(setOf("a/b"), matched("a/b"))
+        router.unsubscribe(b)
+        assertTrue(router.resolve("a/b").isEmpty())
+    }
+
+    @Test
+    fun unsubscribe_stopsDeliveryAndIsIdempotent() {
+        val subscription = subscribe("a")
+        // TopicSubscription.unsubscribe 在主线程直接调用这里
+        router.unsubscribe(subscription)
+        router.unsubscribe(subscription)
+        router.dispatch(TopicEvent("a", null))
+        assertEquals(emptyList<String>(), received)
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun multiLevelWildcardMustBeLast() {
+        subscribe("a/#/b")
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun wildcardMustOccupyWholeLevel() {
+        subscribe("a/b+")
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun topicCanNotContainWildcard() {
+        router.resolve("a/+")
+    }
+}
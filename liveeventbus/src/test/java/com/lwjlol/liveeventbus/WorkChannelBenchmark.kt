@@ -0,0 +1,95 @@
+package com.lwjlol.liveeventbus
+
+import org.junit.Assert.assertEquals
+import org.junit.Before
+import org.junit.Test
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * 一个生产者、一个组，组内 1/2/4/8/16 个成员用 [WorkConsumer.drainTo] 拉取任务的吞吐量。
+ * 结果受 CPU 核数影响，报告中包含 availableProcessors。
+ */
+class WorkChannelBenchmark {
+    @Before
+    fun setUp() {
+        assumeBenchmark()
+    }
+
+    @Test
+    fun throughputByWorkerCount() {
+        // 预热
+        run(4, ITEMS / 4)
+        for (workers in intArrayOf(1, 2, 4, 8, 16)) {
+            val nanos = run(workers, ITEMS)
+            report(
+                "WorkChannel workers=$workers",
+                "cpus" to Runtime.getRuntime().availableProcessors(),
+                "itemsPerSecond" to "%.2fM".format(ITEMS * 1e3 / nanos)
+            )
+        }
+    }
+
+    /**
+     * @return 从开始发送到所有任务处理完的纳秒数
+     */
+    private fun run(workers: Int, items: Int): Long {
+        val channel = WorkChannel<Int>(CAPACITY)
+        val group = channel.group("benchmark")
+        val processed = AtomicLong(0)
+        val sink = AtomicLong(0)
+        val threads = List(workers) {
+            val consumer = group.join()
+            Thread {
+                val batch = ArrayList<Int>(BATCH)
+                var checksum = 0L
+                while (processed.get() < items) {
+                    if (consumer.drainTo(batch, BATCH) == 0) {
+                        Thread.yield()
+                        continue
+                    }
+                    for (item in batch) {
+                        checksum += work(item)
+                    }
+                    processed.addAndGet(batch.size.toLong())
+                    batch.clear()
+                }
+                consumer.close()
+                sink.addAndGet(checksum)
+            }
+        }
+        val start = System.nanoTime()
+        threads.forEach { it.start() }
+        var sent = 0
+        while (sent < items) {
+            // 队列满时让出 CPU 后重试，失败的发送会计入 dropped，不代表任务丢失
+            if (channel.send(sent) == 1) {
+                sent++
+            } else {
+                Thread.yield()
+            }
+        }
+        threads.forEach { it.join() }
+        val elapsed = System.nanoTime() - start
+        assertEquals(items.toLong(), processed.get())
+        assertEquals(items.toLong(), group.metrics().consumed)
+        return elapsed
+    }
+
+    /**
+     * 大约 2us 的计算
+     */
+    private fun work(item: Int): Long {
+        var x = item.toLong()
+        repeat(WORK_STEPS) {
+            x = x * 6364136223846793005L + 1442695040888963407L
+        }
+        return x
+    }
+
+    private companion object {
+        const val ITEMS = 400_000
+        const val CAPACITY = 4096
+        const val BATCH = 32
+        const val WORK_STEPS = 1000
+    }
+}
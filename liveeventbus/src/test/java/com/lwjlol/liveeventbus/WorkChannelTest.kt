@@ -0,0 +1,48 @@
+package com.lwjlol.liveeventbus
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertThrows
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+class WorkChannelTest {
+    @Test
+    fun removeGroup_wakesBlockedConsumers() {
+        val channel = WorkChannel<Int>(16)
+        val group = channel.group("upload")
+        val failures = CountDownLatch(3)
+        val threads = List(3) {
+            val consumer = group.join()
+            Thread {
+                try {
+                    consumer.take()
+                } catch (e: IllegalStateException) {
+                    failures.countDown()
+                }
+            }.apply { start() }
+        }
+        // 等成员阻塞在 take
+        Thread.sleep(50)
+        channel.removeGroup("upload")
+        assertTrue(failures.await(5, TimeUnit.SECONDS))
+        threads.forEach { it.join() }
+        assertEquals(0, channel.send(1))
+    }
+
+    @Test
+    fun removeGroup_rejectsEveryMember() {
+        val channel = WorkChannel<Int>(16)
+        val group = channel.group("upload")
+        val first = group.join()
+        val second = group.join()
+        channel.send(1)
+        channel.removeGroup("upload")
+        // 积压的任务被丢弃
+        assertEquals(0, group.metrics().lag)
+        assertThrows(IllegalStateException::class.java) { first.drainTo(ArrayList(), 10) }
+        assertThrows(IllegalStateException::class.java) { first.poll(1000) }
+        assertThrows(IllegalStateException::class.java) { second.take() }
+    }
+}